@@ -0,0 +1,179 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import de.malkusch.ha.monitoring.infrastructure.persistence.StateStorage;
+import de.malkusch.ha.shared.infrastructure.buderus.Heater;
+import de.malkusch.km200.KM200Exception;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Discovers the numeric values of the KM200 service tree.
+ *
+ * The tree is walked once along its references. A complete result is kept in
+ * the {@link StateStorage} per set of roots, so that a restart doesn't repeat
+ * the walk. A walk which found nothing or couldn't read a root is not cached,
+ * so that the next {@link #discover()} walks again. The include and exclude
+ * patterns are applied after the walk, so changing them doesn't require a new
+ * walk.
+ */
+@Slf4j
+final class BuderusDiscovery {
+
+    private static final String CACHE_KEY = "buderus.discovery";
+
+    /**
+     * A path whose response contains the values of all its leaves. A simple
+     * value has itself as only leaf.
+     */
+    record Source(String path, List<String> leaves) {
+
+        boolean isBulk() {
+            return !leaves.equals(List.of(path));
+        }
+    }
+
+    private final Heater heater;
+    private final ObjectMapper mapper;
+    private final List<String> roots;
+    private final List<Pattern> includes;
+    private final List<Pattern> excludes;
+    private volatile List<Source> cached;
+
+    BuderusDiscovery(Heater heater, ObjectMapper mapper, StateStorage storage, List<String> roots,
+            List<String> includes, List<String> excludes) {
+
+        this.heater = heater;
+        this.mapper = mapper;
+        this.roots = roots;
+        this.includes = includes.stream().map(Pattern::compile).toList();
+        this.excludes = excludes.stream().map(Pattern::compile).toList();
+        var cacheKey = CACHE_KEY + "." + String.join(",", roots);
+        storage.persist(cacheKey, it -> cached = deserialize(it), () -> cached == null ? "" : serialize(cached));
+    }
+
+    List<Source> discover() throws InterruptedException {
+        var sources = cached;
+        if (sources == null) {
+            sources = walk();
+        } else {
+            log.info("Using {} cached KM200 sources", sources.size());
+        }
+        return sources.stream().map(this::filter).filter(it -> !it.leaves.isEmpty()).toList();
+    }
+
+    /**
+     * Whether the last {@link #discover()} was complete, i.e. there's no need
+     * to discover again.
+     */
+    boolean isComplete() {
+        return cached != null;
+    }
+
+    private Source filter(Source source) {
+        var leaves = source.leaves.stream().filter(this::isIncluded).toList();
+        return new Source(source.path, leaves);
+    }
+
+    private boolean isIncluded(String path) {
+        var included = includes.isEmpty() || includes.stream().anyMatch(it -> it.matcher(path).matches());
+        return included && excludes.stream().noneMatch(it -> it.matcher(path).matches());
+    }
+
+    private List<Source> walk() throws InterruptedException {
+        log.info("Walking KM200 tree from {}", roots);
+        var start = System.nanoTime();
+        var sources = new LinkedHashMap<String, Source>();
+        var visited = new HashSet<String>();
+        var failedRoots = new ArrayList<String>();
+        var queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            var path = queue.poll();
+            if (!visited.add(path)) {
+                continue;
+            }
+            JsonNode node;
+            try {
+                node = mapper.readTree(heater.discover(path));
+
+            } catch (KM200Exception | IOException | JacksonException e) {
+                if (roots.contains(path)) {
+                    log.warn("Failed to walk KM200 root {}: {}", path, e.getMessage());
+                    failedRoots.add(path);
+                } else {
+                    log.debug("Skipping KM200 path {}: {}", path, e.getMessage());
+                }
+                continue;
+            }
+
+            for (var reference : node.path("references")) {
+                queue.add(reference.path("id").asString());
+            }
+            if (node.path("value").isNumber()) {
+                sources.put(path, new Source(path, List.of(path)));
+            }
+            var bulk = bulkValues(node);
+            if (!bulk.isEmpty()) {
+                sources.put(path, new Source(path, List.copyOf(bulk.keySet())));
+            }
+        }
+        log.info("Discovered {} KM200 sources within {} paths in {} ms", sources.size(), visited.size(),
+                (System.nanoTime() - start) / 1_000_000);
+        var result = List.copyOf(sources.values());
+        if (!result.isEmpty() && failedRoots.isEmpty()) {
+            cached = result;
+        }
+        return result;
+    }
+
+    /**
+     * Extracts the values which the gateway returned inline for several
+     * siblings, e.g. {@code {"values": [{"id": "/a/b", "value": 1.0}, ...]}}.
+     */
+    Map<String, Double> bulkValues(String json) {
+        return bulkValues(mapper.readTree(json));
+    }
+
+    private static Map<String, Double> bulkValues(JsonNode node) {
+        var values = new LinkedHashMap<String, Double>();
+        for (var child : node.path("values")) {
+            var id = child.path("id");
+            var value = child.path("value");
+            if (id.isString() && value.isNumber()) {
+                values.put(id.asString(), value.asDouble());
+            }
+        }
+        return values;
+    }
+
+    private static String serialize(Collection<Source> sources) {
+        return sources.stream() //
+                .map(it -> it.isBulk() ? it.path + "=" + String.join("|", it.leaves) : it.path) //
+                .collect(joining(","));
+    }
+
+    private static List<Source> deserialize(String value) {
+        if (value.isBlank()) {
+            return null;
+        }
+        return Arrays.stream(value.split(",")).map(it -> {
+            var parts = it.split("=", 2);
+            var leaves = parts.length == 1 ? List.of(parts[0]) : List.of(parts[1].split("\\|"));
+            return new Source(parts[0], leaves);
+        }).toList();
+    }
+}
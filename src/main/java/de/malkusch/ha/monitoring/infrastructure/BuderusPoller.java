@@ -1,87 +1,319 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
+import de.malkusch.ha.monitoring.infrastructure.BuderusDiscovery.Source;
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
+import de.malkusch.ha.monitoring.infrastructure.persistence.StateStorage;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry.Registration;
+import de.malkusch.ha.shared.infrastructure.async.AsyncService;
 import de.malkusch.ha.shared.infrastructure.buderus.Heater;
-import de.malkusch.ha.shared.infrastructure.scheduler.Schedulers;
-import io.prometheus.client.Gauge;
+import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
+import tools.jackson.databind.ObjectMapper;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
 
 import static de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreakerExceptionHandler.withCircuitBreakerLogging;
-import static de.malkusch.ha.shared.infrastructure.scheduler.Schedulers.singleThreadScheduler;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
 
 @Slf4j
 @Service
 public class BuderusPoller implements AutoCloseable {
 
+    /**
+     * How often a path is refreshed. Paths of {@link #STARTUP_ONLY} are fetched
+     * once during the warm-up. Their rate is only used to retry them until the
+     * first success.
+     */
+    enum Tier {
+        FAST, NORMAL, SLOW, STARTUP_ONLY
+    }
+
+    @Component
+    @ConfigurationProperties("buderus.polling")
+    @Data
+    static class BuderusPollingProperties {
+        private Map<Tier, Duration> rates;
+        private Map<Tier, List<String>> paths;
+        private Duration staleAfter;
+        private Duration warmUpBudget;
+        private Discovery discovery;
+
+        @Data
+        static class Discovery {
+            private boolean enabled;
+            private Tier tier;
+            private List<String> roots;
+            private List<String> include = List.of();
+            private List<String> exclude = List.of();
+            private Duration retry;
+        }
+    }
+
+    private static final Pattern INVALID_METRIC_NAME_CHARACTERS = Pattern.compile("[^a-zA-Z0-9_:]");
+
     private final Heater heater;
-    private final ScheduledExecutorService scheduler = singleThreadScheduler("BuderusHeater");
+    private final ScheduledExecutorService scheduler;
+    private final PollerRegistry registry;
+    private final BuderusPollingProperties properties;
+    private final BuderusDiscovery discovery;
+    private final Queue<ScheduledFuture<?>> scheduledUpdates = new ConcurrentLinkedQueue<>();
+    private final Set<String> known = ConcurrentHashMap.newKeySet();
+    private final Set<String> names = ConcurrentHashMap.newKeySet();
+    private final ThreadFactory warmUpThreads = Thread.ofVirtual().name("buderus-warm-up-", 0).factory();
+
+    BuderusPoller(Heater heater, ScheduledExecutorService scheduler, AsyncService async, PollerRegistry registry,
+            ObjectMapper mapper, StateStorage storage, BuderusPollingProperties properties) {
 
-    BuderusPoller(Heater heater, @Value("${buderus.queryRate}") Duration rate) throws Exception {
         this.heater = heater;
+        this.scheduler = scheduler;
+        this.registry = registry;
+        this.properties = properties;
+
+        var discoveryProperties = properties.discovery;
+        discovery = discoveryProperties != null && discoveryProperties.enabled
+                ? new BuderusDiscovery(heater, mapper, storage, discoveryProperties.roots,
+                        discoveryProperties.include, discoveryProperties.exclude)
+                : null;
+
+        var updates = new ArrayList<PathUpdate>();
+        properties.paths.forEach((tier, paths) -> {
+            var sources = paths.stream().map(it -> new Source(it, List.of(it))).toList();
+            updates.addAll(schedule(tier, sources));
+        });
+
+        async.executeAsync(() -> {
+            warmUp(updates, properties.warmUpBudget);
+            if (discovery != null) {
+                discover();
+            }
+        });
+    }
 
-        log.info("Polling KM200 with rate {}", rate);
-
-        scheduleUpdate("/dhwCircuits/dhw1/actualTemp", rate);
-        scheduleUpdate("/dhwCircuits/dhw1/currentSetpoint", rate);
-        scheduleUpdate("/dhwCircuits/dhw1/waterFlow", rate);
-
-        scheduleUpdate("/heatingCircuits/hc1/actualSupplyTemperature", rate);
-        scheduleUpdate("/heatingCircuits/hc1/currentRoomSetpoint", rate);
-        scheduleUpdate("/heatingCircuits/hc1/supplyTemperatureSetpoint", rate);
-        scheduleUpdate("/heatingCircuits/hc1/pumpModulation", rate);
-
-        scheduleUpdate("/heatSources/actualModulation", rate);
-        scheduleUpdate("/heatSources/actualSupplyTemperature", rate);
-        scheduleUpdate("/heatSources/supplyTemperatureSetpoint", rate);
-        scheduleUpdate("/heatSources/applianceSupplyTemperature", rate);
-        scheduleUpdate("/heatSources/CHpumpModulation", rate);
-        scheduleUpdate("/heatSources/energyMonitoring/consumption", rate);
-        scheduleUpdate("/heatSources/fanSpeed_setpoint", rate);
-        scheduleUpdate("/heatSources/hs1/actualModulation", rate);
-        scheduleUpdate("/heatSources/nominalCHPower", rate);
-        scheduleUpdate("/heatSources/nominalDHWPower", rate);
-        scheduleUpdate("/heatSources/returnTemperature", rate);
-        scheduleUpdate("/heatSources/workingTime/totalSystem", rate);
-        scheduleUpdate("/heatSources/numberOfStarts", rate);
-        // scheduleUpdate("/heatSources/systemPressure", rate);
-
-        scheduleUpdate("/system/appliance/actualSupplyTemperature", rate);
-        scheduleUpdate("/system/sensors/temperatures/outdoor_t1", rate);
-        scheduleUpdate("/system/sensors/temperatures/return", rate);
-        scheduleUpdate("/system/sensors/temperatures/supply_t1", rate);
-        scheduleUpdate("/system/sensors/temperatures/switch", rate);
+    /**
+     * Polls the discovered leaves which aren't polled yet. An incomplete
+     * discovery is repeated after the configured retry delay.
+     */
+    private void discover() throws InterruptedException {
+        var sources = new ArrayList<Source>();
+        for (var source : discovery.discover()) {
+            var leaves = source.leaves().stream().filter(it -> !known.contains(it)).distinct().toList();
+            if (!leaves.isEmpty()) {
+                sources.add(new Source(source.path(), leaves));
+            }
+        }
+        warmUp(schedule(properties.discovery.tier, sources), properties.warmUpBudget);
+
+        if (!discovery.isComplete()) {
+            var retry = properties.discovery.retry;
+            log.warn("KM200 discovery was incomplete, retrying in {}", retry);
+            scheduledUpdates.add(scheduler.schedule(this::rediscover, retry.toMillis(), MILLISECONDS));
+        }
+    }
+
+    private void rediscover() {
+        try {
+            discover();
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } catch (Exception e) {
+            log.error("Failed to discover KM200 paths", e);
+        }
+    }
+
+    private List<PathUpdate> schedule(Tier tier, List<Source> sources) {
+        var rate = properties.rates.get(tier);
+        if (rate == null) {
+            throw new IllegalArgumentException("Missing rate for tier " + tier);
+        }
+        log.info("Polling {} KM200 paths of tier {} with rate {}", sources.size(), tier, rate);
+        var updates = new ArrayList<PathUpdate>();
+        for (int i = 0; i < sources.size(); i++) {
+            var source = sources.get(i);
+            try {
+                var update = update(source, staleAfter(tier, rate, properties.staleAfter));
+                if (update == null) {
+                    continue;
+                }
+                var offset = rate.multipliedBy(i).dividedBy(sources.size());
+                var scheduled = schedule(update, rate, offset);
+                if (tier == Tier.STARTUP_ONLY) {
+                    update.retryUntilSuccess(scheduled);
+                }
+                updates.add(update);
+
+            } catch (RuntimeException e) {
+                log.error("Failed to poll KM200 source {}", source.path(), e);
+            }
+        }
+        return updates;
     }
 
-    private void scheduleUpdate(String path, Duration rate) throws Exception {
-        var name = "heater" + path.replace('/', '_');
-        var help = path;
-        var gauge = Gauge.build().name(name).help(help).create();
-        gauge.register();
-        Callable<Void> update = () -> {
-            var value = heater.query(path);
-            gauge.set(value);
-            log.debug("Update {} = {}", path, value);
+    /**
+     * A value is stale after the configured duration, but never before it
+     * missed two updates of its tier.
+     */
+    private static Duration staleAfter(Tier tier, Duration rate, Duration staleAfter) {
+        if (tier == Tier.STARTUP_ONLY) {
+            return Duration.ZERO;
+        }
+        var missedUpdates = rate.multipliedBy(2);
+        return missedUpdates.compareTo(staleAfter) > 0 ? missedUpdates : staleAfter;
+    }
+
+    /**
+     * Registers a gauge for each leaf. Leaves which aren't a path or whose
+     * metric name is already taken are skipped.
+     *
+     * @return null if no leaf is left
+     */
+    private PathUpdate update(Source source, Duration staleAfter) {
+        var gauges = new LinkedHashMap<String, TrackedGauge>();
+        for (var path : source.leaves()) {
+            if (!path.startsWith("/")) {
+                log.warn("Skipping invalid KM200 path {}", path);
+                continue;
+            }
+            var name = "heater" + INVALID_METRIC_NAME_CHARACTERS.matcher(path).replaceAll("_");
+            if (!names.add(name)) {
+                log.warn("Skipping KM200 path {}, as its metric {} is already polled", path, name);
+                continue;
+            }
+            var help = path;
+            var gauge = TrackedGauge.build().name(name).help(help).staleAfter(staleAfter).create();
+            try {
+                gauge.register();
+
+            } catch (IllegalArgumentException e) {
+                log.warn("Skipping KM200 path {}: {}", path, e.getMessage());
+                continue;
+            }
+            gauges.put(path, gauge);
+            known.add(path);
+        }
+        if (gauges.isEmpty()) {
+            return null;
+        }
+        var update = new PathUpdate(source, gauges);
+        update.registration = registry.register(source.path(), "buderus", () -> scheduler.execute(update),
+                heater.circuitBreaker());
+        return update;
+    }
+
+    private ScheduledFuture<?> schedule(PathUpdate update, Duration rate, Duration offset) {
+        var scheduled = scheduler.scheduleAtFixedRate(update, rate.plus(offset).toMillis(), rate.toMillis(),
+                MILLISECONDS);
+        update.registration.scheduled(scheduled);
+        scheduledUpdates.add(scheduled);
+        return scheduled;
+    }
+
+    /**
+     * Fetches all paths once in parallel, so that the gauges fill in right after
+     * startup. The heater's query engine bounds the load on the gateway. Paths
+     * which didn't finish within the budget are cancelled and wait for their
+     * first scheduled update.
+     */
+    private void warmUp(List<PathUpdate> updates, Duration budget) throws InterruptedException {
+        log.info("Warming up {} KM200 paths with budget {}", updates.size(), budget);
+        var tasks = updates.stream().<Callable<Void>>map(update -> () -> {
+            withCircuitBreakerLogging(update::update);
             return null;
-        };
-        update.call();
-        scheduler.scheduleAtFixedRate(() -> {
+        }).toList();
+
+        var start = System.nanoTime();
+        try (var executor = Executors.newThreadPerTaskExecutor(warmUpThreads)) {
+            var futures = executor.invokeAll(tasks, budget.toNanos(), NANOSECONDS);
+            var states = futures.stream().collect(groupingBy(Future::state, counting()));
+            log.info("Warmed up KM200 in {} ms: {}", (System.nanoTime() - start) / 1_000_000, states);
+        }
+    }
+
+    private final class PathUpdate implements Runnable {
+
+        private final Source source;
+        private final String path;
+        private final Map<String, TrackedGauge> gauges;
+        private Registration registration;
+        private volatile ScheduledFuture<?> retry;
+
+        PathUpdate(Source source, Map<String, TrackedGauge> gauges) {
+            this.source = source;
+            this.path = source.path();
+            this.gauges = gauges;
+        }
+
+        /**
+         * The scheduled update is cancelled after the first successful update.
+         */
+        void retryUntilSuccess(ScheduledFuture<?> retry) {
+            this.retry = retry;
+        }
+
+        void update() throws Exception {
+            registration.measure(() -> {
+                if (!source.isBulk()) {
+                    var value = heater.query(path);
+                    gauges.get(path).set(value);
+                    log.debug("Update {} = {}", path, value);
+
+                } else {
+                    var values = discovery.bulkValues(heater.queryJson(path));
+                    gauges.forEach((leaf, gauge) -> {
+                        var value = values.get(leaf);
+                        if (value != null) {
+                            gauge.set(value);
+                        }
+                    });
+                    log.debug("Update {} = {}", path, values);
+                }
+
+                var retry = this.retry;
+                if (retry != null) {
+                    log.debug("Stop retrying startup-only path {}", path);
+                    retry.cancel(false);
+                    scheduledUpdates.remove(retry);
+                    this.retry = null;
+                }
+            });
+        }
+
+        @Override
+        public void run() {
             try {
-                withCircuitBreakerLogging(update::call);
+                withCircuitBreakerLogging(this::update);
 
             } catch (Exception e) {
                 log.error("Failed to update heater's metric {}", path, e);
             }
-        }, rate.toSeconds(), rate.toSeconds(), SECONDS);
+        }
     }
 
     @Override
-    public void close() throws InterruptedException {
-        Schedulers.close(scheduler);
+    public void close() {
+        scheduledUpdates.forEach(it -> it.cancel(true));
     }
 }
@@ -1,9 +1,12 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
 
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker.CircuitBreakerOpenException;
+import io.prometheus.client.Collector;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -23,6 +26,16 @@ final class CircuitBreakerPoller implements Poller {
         circuitBreaker.run(poller::update);
     }
 
+    @Override
+    public Optional<CircuitBreaker<?>> circuitBreaker() {
+        return Optional.of(circuitBreaker);
+    }
+
+    @Override
+    public Collection<Collector> collectors() {
+        return poller.collectors();
+    }
+
     @Override
     public String toString() {
         return poller.toString();
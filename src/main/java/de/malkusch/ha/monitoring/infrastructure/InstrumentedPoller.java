@@ -0,0 +1,99 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker.CircuitBreakerOpenException;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Measures latency and outcome of each update.
+ *
+ * Decorators which swallow an error on purpose (e.g. {@link OfflinePoller})
+ * throw a {@link SuppressedException} instead. The update is counted as
+ * suppressed and ends without an error.
+ */
+final class InstrumentedPoller implements Poller {
+
+    private static final Histogram LATENCY = Histogram.build() //
+            .name("poller_update_duration_seconds") //
+            .help("Latency of a poller's update") //
+            .labelNames("poller") //
+            .buckets(0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30) //
+            .register();
+
+    private static final Counter OUTCOMES = Counter.build() //
+            .name("poller_updates") //
+            .help("Updates of a poller by outcome") //
+            .labelNames("poller", "outcome") //
+            .register();
+
+    private enum Outcome {
+        SUCCESS, SUPPRESSED, TIMEOUT, IO_ERROR, CIRCUIT_OPEN, INTERRUPTED, ERROR;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Poller poller;
+    private final String name;
+
+    InstrumentedPoller(Poller poller) {
+        this.poller = poller;
+        this.name = poller.toString();
+    }
+
+    @Override
+    public void update() throws IOException, InterruptedException {
+        var outcome = Outcome.ERROR;
+        var timer = LATENCY.labels(name).startTimer();
+        try {
+            poller.update();
+            outcome = Outcome.SUCCESS;
+
+        } catch (SuppressedException e) {
+            outcome = Outcome.SUPPRESSED;
+
+        } catch (CircuitBreakerOpenException e) {
+            outcome = Outcome.CIRCUIT_OPEN;
+            throw e;
+
+        } catch (IOException e) {
+            outcome = isTimeout(e) ? Outcome.TIMEOUT : Outcome.IO_ERROR;
+            throw e;
+
+        } catch (InterruptedException e) {
+            outcome = Outcome.INTERRUPTED;
+            throw e;
+
+        } finally {
+            timer.observeDuration();
+            OUTCOMES.labels(name, outcome.label()).inc();
+        }
+    }
+
+    private static boolean isTimeout(IOException e) {
+        return e instanceof HttpTimeoutException || e.getCause() instanceof HttpTimeoutException;
+    }
+
+    @Override
+    public Optional<CircuitBreaker<?>> circuitBreaker() {
+        return poller.circuitBreaker();
+    }
+
+    @Override
+    public Collection<Collector> collectors() {
+        return poller.collectors();
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
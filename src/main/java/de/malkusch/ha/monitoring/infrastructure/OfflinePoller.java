@@ -1,8 +1,12 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.Optional;
 
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker.CircuitBreakerOpenException;
+import io.prometheus.client.Collector;
 import lombok.RequiredArgsConstructor;
 
 @RequiredArgsConstructor
@@ -11,14 +15,25 @@ final class OfflinePoller implements Poller {
     private final Poller poller;
 
     @Override
-    public void update() throws InterruptedException {
+    public void update() throws IOException, InterruptedException {
         try {
             poller.update();
 
         } catch (IOException | CircuitBreakerOpenException e) {
+            throw new SuppressedException(e);
         }
     }
 
+    @Override
+    public Optional<CircuitBreaker<?>> circuitBreaker() {
+        return poller.circuitBreaker();
+    }
+
+    @Override
+    public Collection<Collector> collectors() {
+        return poller.collectors();
+    }
+
     @Override
     public String toString() {
         return poller.toString();
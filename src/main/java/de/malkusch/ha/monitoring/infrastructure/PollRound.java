@@ -0,0 +1,237 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker.CircuitBreakerOpenException;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Collector.MetricFamilySamples;
+import io.prometheus.client.CollectorRegistry;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Histogram;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Updates all registered pollers together as one round.
+ *
+ * Each round runs every member on its own virtual thread within one scope. The
+ * scope is closed at the deadline: members which haven't finished by then are
+ * interrupted, and the round ends only after all of them have terminated. No
+ * thread outlives its round.
+ *
+ * Members update their gauges while the round is running. The completed round
+ * publishes one immutable snapshot of the members' collectors, see
+ * {@link #snapshot()}, so a scrape never sees a partially updated round. All
+ * other metrics are served live.
+ */
+@Slf4j
+final class PollRound implements AutoCloseable {
+
+    private static final Histogram DURATION = Histogram.build() //
+            .name("poll_round_duration_seconds") //
+            .help("Duration of a complete poll round") //
+            .register();
+
+    private static final Counter OUTCOMES = Counter.build() //
+            .name("poll_round_outcomes") //
+            .help("Outcome of each member of a poll round") //
+            .labelNames("poller", "outcome") //
+            .register();
+
+    private record Round(String slowest, double slowestSeconds, double completedSeconds) {
+    }
+
+    /**
+     * Exposes the last round as one immutable value.
+     */
+    private static final class RoundCollector extends Collector {
+
+        private volatile Round round;
+
+        @Override
+        public List<MetricFamilySamples> collect() {
+            var round = this.round;
+            if (round == null) {
+                return List.of();
+            }
+            var slowest = new MetricFamilySamples.Sample("poll_round_slowest_member_seconds", List.of("poller"),
+                    List.of(round.slowest), round.slowestSeconds);
+            var completed = new MetricFamilySamples.Sample("poll_round_last_timestamp_seconds", List.of(), List.of(),
+                    round.completedSeconds);
+            return List.of(
+                    new MetricFamilySamples("poll_round_slowest_member_seconds", Type.GAUGE,
+                            "Duration of the slowest member of the last poll round", List.of(slowest)),
+                    new MetricFamilySamples("poll_round_last_timestamp_seconds", Type.GAUGE,
+                            "Completion time of the last poll round", List.of(completed)));
+        }
+    }
+
+    private static final RoundCollector LAST_ROUND = new RoundCollector().register();
+
+    private enum Outcome {
+        SUCCESS, FAILED, CANCELLED;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Duration rate;
+    private final Duration deadline;
+    private final List<ScheduledPoller> pollers = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private volatile ScheduledFuture<?> rounds;
+    private final ThreadFactory factory = Thread.ofVirtual().name("poll-round-", 0).factory();
+    private final List<Collector> collectors = new CopyOnWriteArrayList<>();
+
+    private record Snapshot(Set<String> names, List<MetricFamilySamples> samples) {
+    }
+
+    private volatile Snapshot snapshot;
+
+    PollRound(ScheduledExecutorService scheduler, Duration rate, Duration deadline) {
+        if (deadline.compareTo(rate) >= 0) {
+            throw new IllegalArgumentException(String.format("Deadline %s must be shorter than rate %s", deadline, rate));
+        }
+        this.scheduler = scheduler;
+        this.rate = rate;
+        this.deadline = deadline;
+    }
+
+    void register(ScheduledPoller poller) {
+        pollers.add(poller);
+        collectors.addAll(poller.collectors());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        if (pollers.isEmpty()) {
+            return;
+        }
+        log.info("Polling {} pollers in rounds with rate {} and deadline {}", pollers.size(), rate, deadline);
+        rounds = scheduler.scheduleAtFixedRate(() -> {
+            try {
+                run();
+
+            } catch (InterruptedException e) {
+                currentThread().interrupt();
+            }
+        }, 0, rate.toNanos(), NANOSECONDS);
+        pollers.forEach(it -> it.registration().scheduled(rounds));
+    }
+
+    private final class Member implements Callable<Void> {
+
+        private final ScheduledPoller poller;
+        private volatile Outcome outcome = Outcome.CANCELLED;
+        private volatile long duration;
+
+        Member(ScheduledPoller poller) {
+            this.poller = poller;
+        }
+
+        @Override
+        public Void call() {
+            var start = System.nanoTime();
+            try {
+                poller.updateOrThrow();
+                outcome = Outcome.SUCCESS;
+
+            } catch (InterruptedException e) {
+                outcome = Outcome.CANCELLED;
+                currentThread().interrupt();
+
+            } catch (CircuitBreakerOpenException e) {
+                outcome = Outcome.FAILED;
+                log.debug("Polling {} failed: {}", poller, e.getMessage());
+
+            } catch (Exception e) {
+                outcome = Outcome.FAILED;
+                log.warn("Polling {} failed: {}", poller, e.getMessage());
+
+            } finally {
+                duration = System.nanoTime() - start;
+            }
+            return null;
+        }
+    }
+
+    void run() throws InterruptedException {
+        var members = pollers.stream().map(Member::new).toList();
+        var start = System.nanoTime();
+        try (var scope = Executors.newThreadPerTaskExecutor(factory)) {
+            var futures = scope.invokeAll(members, deadline.toNanos(), NANOSECONDS);
+            for (int i = 0; i < futures.size(); i++) {
+                if (futures.get(i).isCancelled()) {
+                    members.get(i).outcome = Outcome.CANCELLED;
+                }
+            }
+        }
+        var duration = System.nanoTime() - start;
+        publish(members, duration);
+    }
+
+    private void publish(List<Member> members, long duration) {
+        DURATION.observe(duration / 1e9);
+        for (var member : members) {
+            OUTCOMES.labels(member.poller.toString(), member.outcome.label()).inc();
+            if (member.outcome == Outcome.CANCELLED) {
+                log.warn("Cancelled {}: exceeded round deadline {}", member.poller, deadline);
+            }
+        }
+
+        members.stream().max(Comparator.comparingLong(it -> it.duration)).ifPresent(slowest -> {
+            LAST_ROUND.round = new Round(slowest.poller.toString(), slowest.duration / 1e9,
+                    System.currentTimeMillis() / 1e3);
+        });
+        var samples = new ArrayList<MetricFamilySamples>();
+        collectors.forEach(it -> samples.addAll(it.collect()));
+        snapshot = new Snapshot(samples.stream().map(it -> it.name).collect(toSet()), List.copyOf(samples));
+        log.debug("Finished poll round with {} members in {} ms", members.size(), duration / 1_000_000);
+    }
+
+    /**
+     * The members' collectors as of the last completed round, together with the
+     * live rest of the registry. Until the first round is completed, everything
+     * is live.
+     */
+    Collector snapshot() {
+        return new Collector() {
+
+            @Override
+            public List<MetricFamilySamples> collect() {
+                var live = Collections.list(CollectorRegistry.defaultRegistry.metricFamilySamples());
+                var snapshot = PollRound.this.snapshot;
+                if (snapshot == null) {
+                    return live;
+                }
+                var samples = new ArrayList<>(snapshot.samples);
+                live.stream().filter(it -> !snapshot.names.contains(it.name)).forEach(samples::add);
+                return samples;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        if (rounds != null) {
+            rounds.cancel(true);
+        }
+    }
+}
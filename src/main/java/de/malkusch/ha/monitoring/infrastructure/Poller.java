@@ -1,9 +1,25 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
+import io.prometheus.client.Collector;
 
 interface Poller {
 
     void update() throws IOException, InterruptedException;
 
+    default Optional<CircuitBreaker<?>> circuitBreaker() {
+        return Optional.empty();
+    }
+
+    /**
+     * The collectors which are written by {@link #update()}.
+     */
+    default Collection<Collector> collectors() {
+        return List.of();
+    }
 }
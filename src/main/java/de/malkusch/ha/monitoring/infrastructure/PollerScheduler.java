@@ -0,0 +1,104 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+import static java.lang.Math.max;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Spreads all registered pollers evenly across the update rate.
+ *
+ * The pollers are ordered by name and each gets a fixed offset within the rate,
+ * so the phases stay the same across restarts. An optional random jitter is
+ * added to every single cycle. A late cycle doesn't shift the phase, the next
+ * cycle catches up with its slot.
+ */
+@Slf4j
+final class PollerScheduler implements AutoCloseable {
+
+    private final Duration rate;
+    private final Duration jitter;
+    private final List<ScheduledPoller> pollers = new CopyOnWriteArrayList<>();
+    private final Map<ScheduledPoller, ScheduledFuture<?>> scheduled = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier nanoTime;
+    private volatile boolean closed;
+
+    PollerScheduler(ScheduledExecutorService scheduler, Duration rate, Duration jitter) {
+        this(scheduler, rate, jitter, System::nanoTime);
+    }
+
+    PollerScheduler(ScheduledExecutorService scheduler, Duration rate, Duration jitter, LongSupplier nanoTime) {
+        if (jitter.isNegative() || jitter.compareTo(rate) >= 0) {
+            throw new IllegalArgumentException(String.format("Jitter %s must be within rate %s", jitter, rate));
+        }
+        this.scheduler = scheduler;
+        this.rate = rate;
+        this.jitter = jitter;
+        this.nanoTime = nanoTime;
+    }
+
+    void register(ScheduledPoller poller) {
+        pollers.add(poller);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    void start() {
+        var ordered = pollers.stream().sorted(Comparator.comparing(ScheduledPoller::toString)).toList();
+        var start = nanoTime.getAsLong();
+        var rateNanos = rate.toNanos();
+        for (int i = 0; i < ordered.size(); i++) {
+            var poller = ordered.get(i);
+            var offset = rateNanos * i / ordered.size();
+            log.info("Scheduling {} with rate {}, offset {} ms and jitter {}", poller, rate, offset / 1_000_000,
+                    jitter);
+            schedule(poller, start + offset);
+        }
+    }
+
+    private void schedule(ScheduledPoller poller, long slot) {
+        if (closed) {
+            return;
+        }
+        var delay = max(0, slot - nanoTime.getAsLong()) + jitter();
+        var next = scheduler.schedule(() -> {
+            try {
+                poller.updateAsync();
+
+            } finally {
+                schedule(poller, slot + rate.toNanos());
+            }
+        }, delay, NANOSECONDS);
+        scheduled.put(poller, next);
+        if (closed) {
+            next.cancel(false);
+        }
+        poller.registration().scheduled(next);
+    }
+
+    private long jitter() {
+        if (jitter.isZero()) {
+            return 0;
+        }
+        return ThreadLocalRandom.current().nextLong(jitter.toNanos());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduled.values().forEach(it -> it.cancel(false));
+    }
+}
@@ -1,6 +1,5 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
-import static de.malkusch.ha.monitoring.infrastructure.PrometheusProxyPoller.mapping;
 import static java.time.Duration.ZERO;
 import static java.util.Arrays.asList;
 import static org.springframework.beans.factory.config.ConfigurableBeanFactory.SCOPE_PROTOTYPE;
@@ -10,6 +9,8 @@ import java.time.Duration;
 import java.time.LocalTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -22,17 +23,21 @@ import org.springframework.stereotype.Component;
 
 
 import de.malkusch.ha.monitoring.infrastructure.PrometheusProxyPoller.Mapping;
+import de.malkusch.ha.monitoring.infrastructure.ScheduledPoller.SingleFlight;
 import de.malkusch.ha.monitoring.infrastructure.SonnenPoller.DownTime;
 import de.malkusch.ha.monitoring.infrastructure.mqtt.MqttMonitoring;
+import de.malkusch.ha.monitoring.infrastructure.mqtt.WildcardMqttMonitoring;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import de.malkusch.ha.shared.infrastructure.async.AsyncExecutor;
 import de.malkusch.ha.shared.infrastructure.async.AsyncService;
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
 import de.malkusch.ha.shared.infrastructure.http.HttpClient;
 import de.malkusch.ha.shared.infrastructure.http.JdkHttpClient;
 import de.malkusch.ha.shared.infrastructure.http.RetryingHttpClient;
+import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.servlet.jakarta.exporter.MetricsServlet;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
-import tools.jackson.databind.JsonNode;
 import tools.jackson.databind.ObjectMapper;
 
 @Configuration
@@ -46,22 +51,61 @@ class PrometheusMonitoringConfiguration {
     static class MonitoringProperties {
         private Duration timeout;
         private int retries;
+        private Duration updateRate;
+        private Duration jitter = Duration.ZERO;
+        private Duration staleAfter;
+        private SingleFlight singleFlight;
+        private Bounded bounded;
+        private Round pollRound;
+        private Scrape scrape;
         private String inverter;
         private CircuitBreaker.Properties circuitBreaker;
         private List<Sensor> sensors;
         private List<MqttSensor> mqttSensors;
+        private List<MqttWildcardSensor> mqttWildcardSensors = List.of();
+
+        @Data
+        static class Bounded {
+            private boolean enabled;
+            private int concurrency;
+            private Duration deadline;
+        }
+
+        @Data
+        static class Round {
+            private boolean enabled;
+            private Duration deadline;
+        }
+
+        @Data
+        static class Scrape {
+            private boolean enabled;
+            private Duration ttl;
+            private Duration maxWait;
+        }
 
         @Data
         static class MqttSensor {
             private String name;
             private String topic;
             private List<String> metrics;
+            private Set<String> aggregated = Set.of();
+            private Duration aggregationWindow = Duration.ofMinutes(1);
 
             public String topic() {
                 return topic == null ? name : topic;
             }
         }
 
+        @Data
+        static class MqttWildcardSensor {
+            private String name;
+            private String filter;
+            private List<String> labels;
+            private List<String> metrics;
+            private int maxTopics = 100;
+        }
+
         @Data
         static class Sensor {
             private String name;
@@ -72,10 +116,22 @@ class PrometheusMonitoringConfiguration {
     private final MonitoringProperties properties;
     private final ObjectMapper mapper;
     private final AsyncService async;
+    private final ScheduledExecutorService scheduler;
+    private final PollerRegistry registry;
 
     @Bean
     public ServletRegistrationBean<MetricsServlet> prometheusServlet() {
-        return new ServletRegistrationBean<>(new MetricsServlet(), "/prometheus/*");
+        MetricsServlet servlet;
+        if (isScrapeDriven()) {
+            servlet = new ScrapeDrivenMetricsServlet(scrapeRefresher());
+        } else if (isPollRoundEnabled()) {
+            var rounds = new CollectorRegistry();
+            pollRound().snapshot().register(rounds);
+            servlet = new MetricsServlet(rounds);
+        } else {
+            servlet = new MetricsServlet();
+        }
+        return new ServletRegistrationBean<>(servlet, "/prometheus/*");
     }
 
     @Component
@@ -115,7 +171,7 @@ class PrometheusMonitoringConfiguration {
         );
         var poller = proxyPoller(url, monitoringHttp(), mappings);
         poller = new SonnenPoller(poller, downTime);
-        return new ScheduledPoller(poller, async);
+        return scheduled(poller);
     }
 
     @Bean
@@ -134,7 +190,7 @@ class PrometheusMonitoringConfiguration {
     @Bean
     @Scope(value = SCOPE_PROTOTYPE)
     ScheduledPoller proxy(String url, Collection<Mapping> mappings) {
-        return new ScheduledPoller(proxyPoller(url, monitoringHttp(), mappings), async);
+        return scheduled(proxyPoller(url, monitoringHttp(), mappings));
     }
 
     @Bean
@@ -142,7 +198,70 @@ class PrometheusMonitoringConfiguration {
         var mappings = asList( //
                 mapping("/Body/Data/Site/P_PV", "inverter_production") //
         );
-        return new ScheduledPoller(new OfflinePoller(proxyPoller(properties.inverter, offlineHttp(), mappings)), async);
+        return scheduled(new OfflinePoller(proxyPoller(properties.inverter, offlineHttp(), mappings)));
+    }
+
+    private ScheduledPoller scheduled(Poller poller) {
+        var instrumented = new InstrumentedPoller(poller);
+        var scheduled = new ScheduledPoller(instrumented, pollerExecutor(), properties.singleFlight, registry);
+        if (isScrapeDriven()) {
+            scrapeRefresher().register(scheduled);
+        } else if (isPollRoundEnabled()) {
+            pollRound().register(scheduled);
+        } else {
+            pollerScheduler().register(scheduled);
+        }
+        return scheduled;
+    }
+
+    private AsyncExecutor pollerExecutor;
+
+    /**
+     * Not a bean, as the unbounded executor is the {@link AsyncService}
+     * singleton itself.
+     */
+    private synchronized AsyncExecutor pollerExecutor() {
+        if (pollerExecutor != null) {
+            return pollerExecutor;
+        }
+        var bounded = properties.bounded;
+        if (bounded == null || !bounded.enabled) {
+            pollerExecutor = async;
+        } else {
+            pollerExecutor = async.boundedGroup("poller", bounded.concurrency, bounded.deadline);
+        }
+        return pollerExecutor;
+    }
+
+    @Bean
+    PollerScheduler pollerScheduler() {
+        return new PollerScheduler(scheduler, properties.updateRate, properties.jitter);
+    }
+
+    private boolean isPollRoundEnabled() {
+        return properties.pollRound != null && properties.pollRound.enabled;
+    }
+
+    @Bean
+    PollRound pollRound() {
+        var deadline = isPollRoundEnabled() ? properties.pollRound.deadline : properties.updateRate.dividedBy(2);
+        return new PollRound(scheduler, properties.updateRate, deadline);
+    }
+
+    private boolean isScrapeDriven() {
+        return properties.scrape != null && properties.scrape.enabled;
+    }
+
+    @Bean
+    ScrapeRefresher scrapeRefresher() {
+        if (!isScrapeDriven()) {
+            return new ScrapeRefresher(pollerExecutor(), properties.updateRate, ZERO);
+        }
+        return new ScrapeRefresher(pollerExecutor(), properties.scrape.ttl, properties.scrape.maxWait);
+    }
+
+    private Mapping mapping(String jsonPath, String prometheusName) {
+        return PrometheusProxyPoller.mapping(jsonPath, prometheusName, properties.staleAfter);
     }
 
     private Poller proxyPoller(String url, HttpClient http, Collection<Mapping> mappings) {
@@ -152,10 +271,21 @@ class PrometheusMonitoringConfiguration {
     }
 
     @Bean
-    List<MqttMonitoring<JsonNode>> mqttMonitoring(MqttMonitoring.Factory factory) {
+    List<MqttMonitoring<double[]>> mqttMonitoring(MqttMonitoring.Factory factory) {
         return properties.mqttSensors.stream().map(it -> {
             try {
-                return factory.build(it.name, it.topic(), it.metrics);
+                return factory.build(it.name, it.topic(), it.metrics, it.aggregated, it.aggregationWindow);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }).toList();
+    }
+
+    @Bean
+    List<WildcardMqttMonitoring> wildcardMqttMonitoring(MqttMonitoring.Factory factory) {
+        return properties.mqttWildcardSensors.stream().map(it -> {
+            try {
+                return factory.build(it.name, it.filter, it.labels, it.metrics, it.maxTopics);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
@@ -1,11 +1,13 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
 import de.malkusch.ha.shared.infrastructure.http.HttpClient;
-import io.prometheus.client.Gauge;
+import io.prometheus.client.Collector;
 import lombok.RequiredArgsConstructor;
 import tools.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Collection;
 
 @RequiredArgsConstructor
@@ -19,11 +21,11 @@ final class PrometheusProxyPoller implements Poller {
     @RequiredArgsConstructor
     public static final class Mapping {
         private final String jsonPath;
-        private final Gauge gauge;
+        private final TrackedGauge gauge;
     }
 
-    public static Mapping mapping(String jsonPath, String prometheusName) {
-        var gauge = Gauge.build().name(prometheusName).help(prometheusName).create();
+    public static Mapping mapping(String jsonPath, String prometheusName, Duration staleAfter) {
+        var gauge = TrackedGauge.build().name(prometheusName).help(prometheusName).staleAfter(staleAfter).create();
         gauge.register();
         return new Mapping(jsonPath, gauge);
     }
@@ -43,6 +45,11 @@ final class PrometheusProxyPoller implements Poller {
         }
     }
 
+    @Override
+    public Collection<Collector> collectors() {
+        return mappings.stream().<Collector>map(it -> it.gauge).toList();
+    }
+
     @Override
     public String toString() {
         return url;
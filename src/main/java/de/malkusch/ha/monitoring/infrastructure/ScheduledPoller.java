@@ -1,30 +1,88 @@
 package de.malkusch.ha.monitoring.infrastructure;
 
-import de.malkusch.ha.shared.infrastructure.async.AsyncService;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry.Registration;
+import de.malkusch.ha.shared.infrastructure.async.AsyncExecutor;
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreakerExceptionHandler;
+import io.prometheus.client.Collector;
+import io.prometheus.client.Counter;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Scheduled;
 
 import java.io.IOException;
 import java.net.http.HttpTimeoutException;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 final class ScheduledPoller implements Poller {
 
+    private static final Counter OVERLAPPING_CYCLES = Counter.build() //
+            .name("poller_overlapping_cycles") //
+            .help("Scheduled cycles which started while the previous update was still running") //
+            .labelNames("poller") //
+            .register();
+
+    private static final Counter SKIPPED_CYCLES = Counter.build() //
+            .name("poller_skipped_cycles") //
+            .help("Scheduled cycles which were dropped because an update was still running") //
+            .labelNames("poller") //
+            .register();
+
+    /**
+     * How a tick is handled while the previous update of the same poller is still
+     * running.
+     */
+    enum SingleFlight {
+
+        /**
+         * Start another update regardless of the running one.
+         */
+        DISABLED,
+
+        /**
+         * Drop the tick.
+         */
+        SKIP,
+
+        /**
+         * Run once more after the running update finished. Further ticks are
+         * dropped.
+         */
+        COALESCE
+    }
+
     private final Poller poller;
-    private final AsyncService async;
+    private final AsyncExecutor executor;
+    private final SingleFlight singleFlight;
+    private final Registration registration;
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicBoolean inFlight = new AtomicBoolean();
+    private final AtomicBoolean pending = new AtomicBoolean();
+
+    public ScheduledPoller(Poller poller, AsyncExecutor executor, SingleFlight singleFlight,
+            PollerRegistry registry) {
 
-    public ScheduledPoller(Poller poller, AsyncService async) {
-        log.info("Scheduling polling metric {}", poller);
+        log.info("Scheduling polling metric {} with single-flight {}", poller, singleFlight);
 
         this.poller = poller;
-        this.async = async;
+        this.executor = executor;
+        this.singleFlight = singleFlight;
+        this.registration = registry.register(toString(), "http", this::updateAsync,
+                poller.circuitBreaker().orElse(null));
+    }
+
+    Registration registration() {
+        return registration;
     }
 
     @Override
     public void update() throws IOException, InterruptedException {
         try {
-            CircuitBreakerExceptionHandler.<IOException, InterruptedException>withCircuitBreakerLogging(poller::update);
+            CircuitBreakerExceptionHandler.<IOException, InterruptedException>withCircuitBreakerLogging(
+                    this::updateOrThrow);
 
         } catch (IOException e) {
             if (e.getCause() instanceof HttpTimeoutException) {
@@ -35,8 +93,88 @@ final class ScheduledPoller implements Poller {
         }
     }
 
-    @Scheduled(fixedRateString = "${monitoring.updateRate}")
+    /**
+     * Like {@link #update()}, but passes timeouts and open circuit breakers to
+     * the caller, so it can account for the real outcome.
+     */
+    void updateOrThrow() throws IOException, InterruptedException {
+        running.incrementAndGet();
+        try {
+            registration.<IOException, InterruptedException>measure(poller::update);
+
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+
     public void updateAsync() {
-        async.executeAsync(this::update);
+        if (singleFlight == SingleFlight.DISABLED) {
+            if (running.get() > 0) {
+                OVERLAPPING_CYCLES.labels(toString()).inc();
+            }
+            executor.executeAsync(this::update);
+            return;
+        }
+
+        if (inFlight.compareAndSet(false, true)) {
+            if (!executor.executeAsync(this::updateSingleFlight)) {
+                inFlight.set(false);
+            }
+            return;
+        }
+
+        OVERLAPPING_CYCLES.labels(toString()).inc();
+        if (singleFlight == SingleFlight.COALESCE && !pending.getAndSet(true)) {
+            log.debug("Coalescing cycle of {} with the running update", poller);
+            return;
+        }
+        SKIPPED_CYCLES.labels(toString()).inc();
+        log.debug("Skipping cycle of {}: previous update is still running", poller);
+    }
+
+    /**
+     * Runs while owning {@code inFlight}. It reruns once for each coalesced
+     * cycle and ends by releasing {@code inFlight}. A failed update drops a
+     * coalesced cycle, as the next scheduled cycle starts over anyway.
+     */
+    private void updateSingleFlight() throws IOException, InterruptedException {
+        while (true) {
+            var completed = false;
+            try {
+                update();
+                completed = true;
+
+            } finally {
+                if (!completed) {
+                    pending.set(false);
+                    inFlight.set(false);
+                }
+            }
+            if (pending.getAndSet(false)) {
+                continue;
+            }
+            inFlight.set(false);
+
+            // A cycle which coalesced right before the release would be lost otherwise
+            if (!pending.get() || !inFlight.compareAndSet(false, true)) {
+                return;
+            }
+            pending.set(false);
+        }
+    }
+
+    @Override
+    public Optional<CircuitBreaker<?>> circuitBreaker() {
+        return poller.circuitBreaker();
+    }
+
+    @Override
+    public Collection<Collector> collectors() {
+        return poller.collectors();
+    }
+
+    @Override
+    public String toString() {
+        return poller.toString();
     }
 }
@@ -0,0 +1,32 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import io.prometheus.client.servlet.jakarta.exporter.MetricsServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+import static java.lang.Thread.currentThread;
+
+/**
+ * Refreshes stale pollers before exposing the metrics.
+ */
+final class ScrapeDrivenMetricsServlet extends MetricsServlet {
+
+    private final transient ScrapeRefresher refresher;
+
+    ScrapeDrivenMetricsServlet(ScrapeRefresher refresher) {
+        this.refresher = refresher;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        try {
+            refresher.refresh();
+
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+        }
+        super.doGet(request, response);
+    }
+}
@@ -0,0 +1,143 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import de.malkusch.ha.shared.infrastructure.async.AsyncExecutor;
+import io.prometheus.client.Counter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Refreshes the registered pollers when Prometheus scrapes.
+ *
+ * A poller is only updated if its last update is older than the TTL, so the
+ * devices are queried at most at the scrape rate. A scrape waits at most
+ * {@code maxWait} for the refreshes. Refreshes which miss that deadline keep
+ * running in the background, and the scrape is served with the last values.
+ */
+@Slf4j
+final class ScrapeRefresher {
+
+    private static final Counter REFRESHES = Counter.build() //
+            .name("scrape_refreshes") //
+            .help("Refreshes of a poller triggered by a scrape by outcome") //
+            .labelNames("poller", "outcome") //
+            .register();
+
+    private enum Outcome {
+        FRESH, REFRESHED, LATE, FAILED, REJECTED;
+
+        String label() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final Duration ttl;
+    private final Duration maxWait;
+    private final AsyncExecutor executor;
+    private final List<Source> sources = new CopyOnWriteArrayList<>();
+
+    ScrapeRefresher(AsyncExecutor executor, Duration ttl, Duration maxWait) {
+        if (maxWait.isNegative() || ttl.isNegative()) {
+            throw new IllegalArgumentException(String.format("TTL %s and max wait %s must not be negative", ttl, maxWait));
+        }
+        this.executor = executor;
+        this.ttl = ttl;
+        this.maxWait = maxWait;
+    }
+
+    void register(ScheduledPoller poller) {
+        log.info("Refreshing {} on scrape with TTL {} and max wait {}", poller, ttl, maxWait);
+        sources.add(new Source(poller));
+    }
+
+    void refresh() throws InterruptedException {
+        var refreshes = sources.stream().map(Source::refresh).toList();
+        var deadline = System.nanoTime() + maxWait.toNanos();
+        for (int i = 0; i < refreshes.size(); i++) {
+            var source = sources.get(i);
+            var refresh = refreshes.get(i);
+            if (refresh == null) {
+                REFRESHES.labels(source.poller.toString(), Outcome.FRESH.label()).inc();
+                continue;
+            }
+            try {
+                refresh.get(Math.max(0, deadline - System.nanoTime()), NANOSECONDS);
+                REFRESHES.labels(source.poller.toString(), Outcome.REFRESHED.label()).inc();
+
+            } catch (TimeoutException e) {
+                REFRESHES.labels(source.poller.toString(), Outcome.LATE.label()).inc();
+                log.debug("Serving last values of {}: refresh exceeded {}", source.poller, maxWait);
+
+            } catch (ExecutionException e) {
+                var outcome = e.getCause() instanceof RejectedRefreshException ? Outcome.REJECTED : Outcome.FAILED;
+                REFRESHES.labels(source.poller.toString(), outcome.label()).inc();
+                log.warn("Refreshing {} failed: {}", source.poller, e.getCause().getMessage());
+            }
+        }
+    }
+
+    private static final class RejectedRefreshException extends RuntimeException {
+        RejectedRefreshException(String message) {
+            super(message);
+        }
+    }
+
+    private final class Source {
+
+        private final ScheduledPoller poller;
+        private volatile long refreshed;
+        private volatile boolean initialized;
+        private CompletableFuture<Void> inFlight;
+
+        Source(ScheduledPoller poller) {
+            this.poller = poller;
+        }
+
+        /**
+         * @return null if the last values are still fresh
+         */
+        synchronized CompletableFuture<Void> refresh() {
+            if (inFlight != null) {
+                return inFlight;
+            }
+            if (initialized && System.nanoTime() - refreshed < ttl.toNanos()) {
+                return null;
+            }
+
+            var refresh = new CompletableFuture<Void>();
+            inFlight = refresh;
+            var accepted = executor.executeAsync(() -> {
+                try {
+                    poller.update();
+                    completed(refresh);
+                    refresh.complete(null);
+
+                } catch (Throwable e) {
+                    completed(refresh);
+                    refresh.completeExceptionally(e);
+                    throw e;
+                }
+            });
+            if (!accepted) {
+                inFlight = null;
+                refresh.completeExceptionally(new RejectedRefreshException("Executor rejected refresh of " + poller));
+            }
+            return refresh;
+        }
+
+        private synchronized void completed(CompletableFuture<Void> refresh) {
+            if (inFlight == refresh) {
+                inFlight = null;
+            }
+            refreshed = System.nanoTime();
+            initialized = true;
+        }
+    }
+}
@@ -2,6 +2,11 @@ package de.malkusch.ha.monitoring.infrastructure;
 
 import java.io.IOException;
 import java.time.LocalTime;
+import java.util.Collection;
+import java.util.Optional;
+
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
+import io.prometheus.client.Collector;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -41,6 +46,7 @@ final class SonnenPoller implements Poller {
         } catch (Exception e) {
             if (isWithinDownTime()) {
                 log.debug("{} is not available within daily down time {}", poller, downTime);
+                throw new SuppressedException(e);
 
             } else {
                 throw e;
@@ -53,6 +59,16 @@ final class SonnenPoller implements Poller {
         return (time.isAfter(downTime.start) && time.isBefore(downTime.end));
     }
 
+    @Override
+    public Optional<CircuitBreaker<?>> circuitBreaker() {
+        return poller.circuitBreaker();
+    }
+
+    @Override
+    public Collection<Collector> collectors() {
+        return poller.collectors();
+    }
+
     @Override
     public String toString() {
         return poller.toString();
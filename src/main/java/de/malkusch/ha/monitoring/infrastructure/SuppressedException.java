@@ -0,0 +1,18 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import java.io.IOException;
+
+/**
+ * Signals an error which a decorator swallowed on purpose (e.g.
+ * {@link OfflinePoller}).
+ *
+ * {@link InstrumentedPoller} counts it as suppressed and doesn't pass it on.
+ */
+final class SuppressedException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    SuppressedException(Throwable cause) {
+        super(cause.getMessage(), cause);
+    }
+}
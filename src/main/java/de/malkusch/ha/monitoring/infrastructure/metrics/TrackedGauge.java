@@ -0,0 +1,262 @@
+package de.malkusch.ha.monitoring.infrastructure.metrics;
+
+import io.prometheus.client.Collector;
+import io.prometheus.client.Gauge;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A gauge which hides values that weren't updated within {@code staleAfter}.
+ *
+ * A stale value without labels is left out of the exposition until it is
+ * updated again. A stale label child is removed for good. Additionally every
+ * update sets {@code last_update_timestamp_seconds} with the gauge's name as
+ * source, so a dead sensor remains visible as such.
+ *
+ * The number of label children can be capped. A new child beyond the cap
+ * evicts the least recently updated child. A child which wasn't set yet is
+ * never evicted, so that a concurrent {@code labels(...).set(...)} can't lose
+ * its value.
+ */
+@Slf4j
+public final class TrackedGauge extends Collector implements Collector.Describable {
+
+    private static final Gauge LAST_UPDATE = Gauge.build() //
+            .name("last_update_timestamp_seconds") //
+            .help("Time of the last update of a source") //
+            .labelNames("source") //
+            .register();
+
+    private final String name;
+    private final String help;
+    private final List<String> labelNames;
+    private final long staleAfter;
+    private final int maxChildren;
+    private final ConcurrentMap<List<String>, Child> children = new ConcurrentHashMap<>();
+    private final Child noLabelsChild;
+
+    private TrackedGauge(Builder builder) {
+        this.name = requireNonNull(builder.name, "name");
+        this.help = builder.help == null ? builder.name : builder.help;
+        this.labelNames = List.of(builder.labelNames);
+        this.staleAfter = builder.staleAfter.toNanos();
+        this.maxChildren = builder.maxChildren;
+        checkMetricName(name);
+        labelNames.forEach(Collector::checkMetricLabelName);
+        this.noLabelsChild = labelNames.isEmpty() ? new Child() : null;
+    }
+
+    public static Builder build() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private String name;
+        private String help;
+        private String[] labelNames = {};
+        private Duration staleAfter = Duration.ZERO;
+        private int maxChildren = Integer.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder help(String help) {
+            this.help = help;
+            return this;
+        }
+
+        public Builder labelNames(String... labelNames) {
+            this.labelNames = labelNames;
+            return this;
+        }
+
+        /**
+         * Zero disables staleness.
+         */
+        public Builder staleAfter(Duration staleAfter) {
+            if (staleAfter.isNegative()) {
+                throw new IllegalArgumentException("Negative staleness " + staleAfter);
+            }
+            this.staleAfter = staleAfter;
+            return this;
+        }
+
+        public Builder maxChildren(int maxChildren) {
+            if (maxChildren < 1) {
+                throw new IllegalArgumentException("Max children must be positive, was " + maxChildren);
+            }
+            this.maxChildren = maxChildren;
+            return this;
+        }
+
+        public TrackedGauge create() {
+            return new TrackedGauge(this);
+        }
+
+        public TrackedGauge register() {
+            return create().register();
+        }
+    }
+
+    public final class Child {
+
+        private volatile double value;
+        private volatile long updated = System.nanoTime();
+        private volatile long updatedMillis;
+        private volatile boolean initialized;
+
+        private Child() {
+        }
+
+        public void set(double value) {
+            this.value = value;
+            updated = System.nanoTime();
+            updatedMillis = System.currentTimeMillis();
+            initialized = true;
+            LAST_UPDATE.labels(name).setToCurrentTime();
+        }
+
+        /**
+         * Restores a value which was set at {@code updatedAt}. Unlike
+         * {@link #set(double)} the value keeps its age, so it becomes stale as
+         * if there had been no restart.
+         */
+        public void restore(double value, Instant updatedAt) {
+            this.value = value;
+            updated = System.nanoTime() - Duration.between(updatedAt, Instant.now()).toNanos();
+            updatedMillis = updatedAt.toEpochMilli();
+            initialized = true;
+            var lastUpdate = LAST_UPDATE.labels(name);
+            if (lastUpdate.get() < updatedMillis / 1e3) {
+                lastUpdate.set(updatedMillis / 1e3);
+            }
+        }
+
+        /**
+         * @return empty if the value wasn't set yet
+         */
+        public Optional<Instant> lastUpdate() {
+            return initialized ? Optional.of(Instant.ofEpochMilli(updatedMillis)) : Optional.empty();
+        }
+
+        public double get() {
+            return value;
+        }
+
+        private boolean isStale(long now) {
+            return !initialized || (staleAfter > 0 && now - updated > staleAfter);
+        }
+    }
+
+    public Child labels(String... labelValues) {
+        if (labelValues.length != labelNames.size()) {
+            throw new IllegalArgumentException("Incorrect number of labels for " + name);
+        }
+        var key = List.of(labelValues);
+        var child = children.get(key);
+        if (child != null) {
+            return child;
+        }
+        child = children.computeIfAbsent(key, it -> new Child());
+        while (children.size() > maxChildren) {
+            if (!evictLeastRecentlyUpdated(key)) {
+                break;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @return false if there's no evictable child
+     */
+    private boolean evictLeastRecentlyUpdated(List<String> keep) {
+        var eldest = children.entrySet().stream() //
+                .filter(it -> !it.getKey().equals(keep) && it.getValue().initialized) //
+                .min((a, b) -> Long.compare(a.getValue().updated, b.getValue().updated));
+        if (eldest.isEmpty()) {
+            return false;
+        }
+        if (children.remove(eldest.get().getKey(), eldest.get().getValue())) {
+            log.debug("Evicted {}{}", name, eldest.get().getKey());
+        }
+        return true;
+    }
+
+    public void remove(String... labelValues) {
+        children.remove(Arrays.asList(labelValues));
+    }
+
+    /**
+     * Removes this gauge's {@code last_update_timestamp_seconds} series, e.g.
+     * after the gauge was unregistered for good.
+     */
+    public void removeLastUpdate() {
+        LAST_UPDATE.remove(name);
+    }
+
+    public void set(double value) {
+        noLabelsChild().set(value);
+    }
+
+    public double get() {
+        return noLabelsChild().get();
+    }
+
+    public void restore(double value, Instant updatedAt) {
+        noLabelsChild().restore(value, updatedAt);
+    }
+
+    public Optional<Instant> lastUpdate() {
+        return noLabelsChild().lastUpdate();
+    }
+
+    private Child noLabelsChild() {
+        if (noLabelsChild == null) {
+            throw new IllegalStateException(name + " requires labels " + labelNames);
+        }
+        return noLabelsChild;
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        var now = System.nanoTime();
+        var samples = new ArrayList<MetricFamilySamples.Sample>();
+        if (noLabelsChild != null) {
+            if (!noLabelsChild.isStale(now)) {
+                samples.add(new MetricFamilySamples.Sample(name, labelNames, List.of(), noLabelsChild.value));
+            }
+        }
+        for (var entry : children.entrySet()) {
+            var child = entry.getValue();
+            if (child.isStale(now)) {
+                if (child.initialized && children.remove(entry.getKey(), child)) {
+                    log.debug("Evicted stale {}{}", name, entry.getKey());
+                }
+                continue;
+            }
+            samples.add(new MetricFamilySamples.Sample(name, labelNames, entry.getKey(), child.value));
+        }
+        return List.of(new MetricFamilySamples(name, Type.GAUGE, help, samples));
+    }
+
+    @Override
+    public List<MetricFamilySamples> describe() {
+        return List.of(new MetricFamilySamples(name, Type.GAUGE, help, List.of()));
+    }
+}
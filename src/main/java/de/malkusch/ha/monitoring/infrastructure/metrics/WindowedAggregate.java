@@ -0,0 +1,198 @@
+package de.malkusch.ha.monitoring.infrastructure.metrics;
+
+import io.prometheus.client.Collector;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongSupplier;
+
+import static java.lang.Double.doubleToRawLongBits;
+import static java.lang.Double.longBitsToDouble;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Aggregates the values which were recorded between two scrapes.
+ *
+ * A gauge only exposes the last value, so a short spike between two scrapes
+ * gets lost. This collector exposes count, sum, min, max and last of a window
+ * as {@code <name>_window_count}, {@code <name>_window_sum}, ... The last
+ * completed window of {@code window} length is exposed, one minute by default.
+ * Min, max and last are left out for an empty window. NaN values are ignored.
+ *
+ * A zero {@code window} is reset by each {@link #collect()} instead. That is
+ * only correct with a single scraper, as several scrapers, or a poll round's
+ * snapshot, would each see just the values since the other one's collect. A
+ * value which is recorded while the window is reset may be lost, as its
+ * recorder can still hold the old window.
+ */
+public final class WindowedAggregate extends Collector implements Collector.Describable {
+
+    private final String name;
+    private final String help;
+    private final long window;
+    private final LongSupplier nanoTime;
+    private final AtomicReference<Window> current;
+    private volatile Window completed;
+
+    private WindowedAggregate(Builder builder) {
+        this.name = requireNonNull(builder.name, "name");
+        this.help = builder.help == null ? builder.name : builder.help;
+        this.window = builder.window.toNanos();
+        this.nanoTime = builder.nanoTime;
+        checkMetricName(name);
+        var now = nanoTime.getAsLong();
+        this.current = new AtomicReference<>(new Window(now));
+        this.completed = new Window(now);
+    }
+
+    public static Builder build() {
+        return new Builder();
+    }
+
+    public static final class Builder {
+
+        private String name;
+        private String help;
+        private Duration window = Duration.ofMinutes(1);
+        private LongSupplier nanoTime = System::nanoTime;
+
+        private Builder() {
+        }
+
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder help(String help) {
+            this.help = help;
+            return this;
+        }
+
+        /**
+         * Zero resets the aggregation with each scrape, which requires a
+         * single scraper.
+         */
+        public Builder window(Duration window) {
+            if (window.isNegative()) {
+                throw new IllegalArgumentException("Negative window " + window);
+            }
+            this.window = window;
+            return this;
+        }
+
+        Builder nanoTime(LongSupplier nanoTime) {
+            this.nanoTime = nanoTime;
+            return this;
+        }
+
+        public WindowedAggregate create() {
+            return new WindowedAggregate(this);
+        }
+
+        public WindowedAggregate register() {
+            return create().register();
+        }
+    }
+
+    private static final class Window {
+
+        private final long start;
+        private final LongAdder count = new LongAdder();
+        private final DoubleAdder sum = new DoubleAdder();
+        private final AtomicLong min = new AtomicLong(doubleToRawLongBits(Double.POSITIVE_INFINITY));
+        private final AtomicLong max = new AtomicLong(doubleToRawLongBits(Double.NEGATIVE_INFINITY));
+        private volatile double last = Double.NaN;
+
+        Window(long start) {
+            this.start = start;
+        }
+
+        void record(double value) {
+            accumulate(min, value, Math::min);
+            accumulate(max, value, Math::max);
+            sum.add(value);
+            last = value;
+            count.increment();
+        }
+
+        private static void accumulate(AtomicLong bits, double value, DoubleBinaryOperator operator) {
+            long current;
+            long next;
+            do {
+                current = bits.get();
+                next = doubleToRawLongBits(operator.applyAsDouble(longBitsToDouble(current), value));
+                if (next == current) {
+                    return;
+                }
+            } while (!bits.compareAndSet(current, next));
+        }
+    }
+
+    public void record(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        current(nanoTime.getAsLong()).record(value);
+    }
+
+    private Window current(long now) {
+        var window = current.get();
+        if (this.window > 0 && now - window.start >= this.window) {
+            roll(window, now);
+            window = current.get();
+        }
+        return window;
+    }
+
+    private void roll(Window window, long now) {
+        var next = new Window(now);
+        if (current.compareAndSet(window, next)) {
+            completed = now - window.start >= 2 * this.window ? new Window(now) : window;
+        }
+    }
+
+    @Override
+    public List<MetricFamilySamples> collect() {
+        var now = nanoTime.getAsLong();
+        Window window;
+        if (this.window == 0) {
+            window = current.getAndSet(new Window(now));
+        } else {
+            current(now);
+            window = completed;
+        }
+
+        var count = window.count.sum();
+        var families = new ArrayList<MetricFamilySamples>();
+        families.add(family("count", count));
+        families.add(family("sum", window.sum.sum()));
+        if (count > 0) {
+            families.add(family("min", longBitsToDouble(window.min.get())));
+            families.add(family("max", longBitsToDouble(window.max.get())));
+            families.add(family("last", window.last));
+        }
+        return families;
+    }
+
+    private MetricFamilySamples family(String statistic, double value) {
+        var sample = new MetricFamilySamples.Sample(name + "_window_" + statistic, List.of(), List.of(), value);
+        return family(statistic, List.of(sample));
+    }
+
+    private MetricFamilySamples family(String statistic, List<MetricFamilySamples.Sample> samples) {
+        return new MetricFamilySamples(name + "_window_" + statistic, Type.GAUGE,
+                help + " (" + statistic + " of window)", samples);
+    }
+
+    @Override
+    public List<MetricFamilySamples> describe() {
+        return List.of("count", "sum", "min", "max", "last").stream().map(it -> family(it, List.of())).toList();
+    }
+}
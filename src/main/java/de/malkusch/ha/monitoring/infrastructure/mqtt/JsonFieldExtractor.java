@@ -0,0 +1,133 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import java.util.Arrays;
+import java.util.List;
+
+import tools.jackson.core.JacksonException;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+/**
+ * Extracts numeric fields from UTF-8 JSON bytes in a single streaming pass.
+ *
+ * The fields are JSON pointers, which are compiled once. Extraction doesn't
+ * build a tree and skips every subtree which doesn't lead to a field. A number
+ * is read as is, {@code true} and {@code false} as 1 and 0, and a numeric
+ * string is parsed. Anything else, i.e. a missing field, null, an object or an
+ * array, is 0. Non-numeric numbers are read leniently like in
+ * {@link MessageMapper.Factory}.
+ */
+final class JsonFieldExtractor {
+
+    private static final int PROPERTY = -1;
+
+    private final ObjectReader reader;
+    private final String[][] names;
+    private final int[][] indexes;
+    private final int maxDepth;
+
+    JsonFieldExtractor(ObjectMapper mapper, List<String> pointers) {
+        this.reader = MessageMapper.Factory.lenientReader(mapper);
+        this.names = new String[pointers.size()][];
+        this.indexes = new int[pointers.size()][];
+        var maxDepth = 0;
+        for (int i = 0; i < pointers.size(); i++) {
+            var pointer = pointers.get(i);
+            if (!pointer.startsWith("/")) {
+                throw new IllegalArgumentException("Invalid JSON pointer " + pointer);
+            }
+            var segments = pointer.substring(1).split("/", -1);
+            names[i] = new String[segments.length];
+            indexes[i] = new int[segments.length];
+            for (int d = 0; d < segments.length; d++) {
+                names[i][d] = segments[d].replace("~1", "/").replace("~0", "~");
+                indexes[i][d] = index(names[i][d]);
+            }
+            maxDepth = Math.max(maxDepth, segments.length);
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    private static int index(String segment) {
+        if (segment.isEmpty() || segment.length() > 9 || !segment.chars().allMatch(Character::isDigit)) {
+            return PROPERTY;
+        }
+        return Integer.parseInt(segment);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    /**
+     * @return the fields' values in the order of the pointers
+     * @throws JacksonException
+     *             if the payload is not JSON
+     */
+    double[] extract(byte[] payload) {
+        var values = new double[names.length];
+        var pathNames = new String[maxDepth + 1];
+        var pathIndexes = new int[maxDepth + 1];
+        try (var json = new NonNumericFilter(payload); var parser = reader.createParser(json)) {
+            var depth = 0;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                switch (token) {
+                case PROPERTY_NAME -> pathNames[depth] = parser.currentName();
+                case END_OBJECT, END_ARRAY -> depth--;
+                default -> {
+                    if (depth > 0 && pathNames[depth] == null) {
+                        pathIndexes[depth]++;
+                    }
+                    if (token.isStructStart()) {
+                        if (depth == maxDepth || !leadsToField(depth, pathNames, pathIndexes)) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        depth++;
+                        pathNames[depth] = null;
+                        pathIndexes[depth] = -1;
+                        if (token == JsonToken.START_OBJECT) {
+                            pathNames[depth] = "";
+                        }
+
+                    } else if (depth > 0) {
+                        for (int i = 0; i < names.length; i++) {
+                            if (names[i].length == depth && matches(i, depth, pathNames, pathIndexes)) {
+                                values[i] = parser.getValueAsDouble();
+                            }
+                        }
+                    }
+                }
+                }
+            }
+        }
+        return values;
+    }
+
+    private boolean leadsToField(int depth, String[] pathNames, int[] pathIndexes) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].length > depth && matches(i, depth, pathNames, pathIndexes)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(int field, int depth, String[] pathNames, int[] pathIndexes) {
+        for (int d = 1; d <= depth; d++) {
+            var name = pathNames[d];
+            var matches = name == null ? indexes[field][d - 1] == pathIndexes[d] : names[field][d - 1].equals(name);
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.deepToString(names);
+    }
+}
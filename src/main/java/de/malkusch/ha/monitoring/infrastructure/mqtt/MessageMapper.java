@@ -1,65 +1,48 @@
 package de.malkusch.ha.monitoring.infrastructure.mqtt;
 
-import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
-import de.malkusch.ha.shared.infrastructure.mqtt.MqttConfiguration;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
-import tools.jackson.databind.JsonNode;
+import tools.jackson.core.json.JsonReadFeature;
 import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
 
+import java.io.InputStream;
 import java.util.function.Function;
 
-import static de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreakerExceptionHandler.withCircuitBreakerLogging;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
 interface MessageMapper<MESSAGE> {
 
     MESSAGE map(String message) throws Exception;
 
+    /**
+     * Maps sloppy sensor JSON in a single pass. Non-numeric numbers like
+     * {@code nan} are read as the respective double, see
+     * {@link NonNumericFilter}.
+     */
     @Component
-    @RequiredArgsConstructor
-    @Slf4j
     static class Factory {
 
-        private final ObjectMapper mapper;
+        private final ObjectReader reader;
 
-        public <T> MessageMapper<T> jsonObject(Class<T> type) {
-            return safeJson((message) -> mapper.readValue(message, type));
+        Factory(ObjectMapper mapper) {
+            this.reader = lenientReader(mapper);
         }
 
-        public MessageMapper<JsonNode> jsonTree() {
-            return safeJson(mapper::readTree);
+        static ObjectReader lenientReader(ObjectMapper mapper) {
+            return mapper.reader().with(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS);
         }
 
-        private final MqttConfiguration.Properties mqttProperties;
-
-        private <T> CircuitBreaker<T> circuitBreaker() {
-            return new CircuitBreaker<T>("json-mapper", mqttProperties.getCircuitBreaker(), Throwable.class);
+        public <T> MessageMapper<T> jsonObject(Class<T> type) {
+            var typeReader = reader.forType(type);
+            return lenientJson(typeReader::readValue);
         }
 
-        private static final Function<String, String> FILTER_NAN = it -> it.replaceAll(": nan", ": null");
-
-        <MESSAGE> MessageMapper<MESSAGE> safeJson(MessageMapper<MESSAGE> mapper) {
-            var circuitBreaker = circuitBreaker();
+        private static <MESSAGE> MessageMapper<MESSAGE> lenientJson(Function<InputStream, MESSAGE> mapper) {
             return message -> {
-                try {
-                    return circuitBreaker.get(() -> mapper.map(message));
-
-                } catch (Throwable e) {
-                    var fixed = FILTER_NAN.apply(message);
-                    var mapped = mapper.map(fixed);
-                    try {
-                        withCircuitBreakerLogging(() -> {
-                            throw e;
-                        });
-
-                    } catch (Throwable e2) {
-                        log.warn("Message {} was repaired to {}: {}", message, fixed, e.getMessage());
-                    }
-
-                    return mapped;
+                try (var json = new NonNumericFilter(message.getBytes(UTF_8))) {
+                    return mapper.apply(json);
                 }
             };
         }
     }
-}
\ No newline at end of file
+}
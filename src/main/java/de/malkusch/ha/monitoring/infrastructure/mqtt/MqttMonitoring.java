@@ -1,16 +1,23 @@
 package de.malkusch.ha.monitoring.infrastructure.mqtt;
 
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
+import de.malkusch.ha.monitoring.infrastructure.metrics.WindowedAggregate;
 import de.malkusch.ha.monitoring.infrastructure.persistence.GaugeFactory;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
 import de.malkusch.ha.shared.infrastructure.mqtt.Mqtt;
-import io.prometheus.client.Gauge;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
-import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.asList;
 
 @RequiredArgsConstructor
@@ -23,6 +30,8 @@ public class MqttMonitoring<MESSAGE> {
         private final Mqtt mqtt;
         private final GaugeFactory gaugeFactory;
         private final MessageMapper.Factory messageMapperFactory;
+        private final PollerRegistry registry;
+        private final ObjectMapper mapper;
 
         public <MESSAGE> MqttMonitoring<MESSAGE> build(Class<MESSAGE> type, String topic,
                 Collection<MessageGauge<MESSAGE>> fieldPollers) throws IOException {
@@ -30,17 +39,53 @@ public class MqttMonitoring<MESSAGE> {
             return build(topic, messageMapperFactory.jsonObject(type), fieldPollers);
         }
 
-        public MqttMonitoring<JsonNode> build(String name, String topic, String... paths) throws IOException {
+        public MqttMonitoring<double[]> build(String name, String topic, String... paths) throws IOException {
             return build(name, topic, asList(paths));
         }
 
-        public MqttMonitoring<JsonNode> build(String name, String topic, Collection<String> paths) throws IOException {
-            var fieldPollers = paths.stream().map(path -> {
+        public MqttMonitoring<double[]> build(String name, String topic, Collection<String> paths) throws IOException {
+            return build(name, topic, paths, Set.of(), Duration.ZERO);
+        }
+
+        /**
+         * The paths are extracted straight from the payload bytes. The
+         * {@code aggregated} paths additionally expose the statistics of all
+         * their values within {@code window}, see {@link WindowedAggregate}.
+         * Their messages are therefore never coalesced.
+         */
+        public MqttMonitoring<double[]> build(String name, String topic, Collection<String> paths,
+                Set<String> aggregated, Duration window) throws IOException {
+
+            var fields = List.copyOf(paths);
+            var fieldPollers = IntStream.range(0, fields.size()).mapToObj(i -> {
+                var path = fields.get(i);
                 var gauge = gaugeFactory.build(gaugeName(name, path));
-                MessageGauge<JsonNode> messageGauge = new MessageGauge<>(gauge, it -> it.at(path).asDouble());
-                return messageGauge;
+                var aggregate = aggregated.contains(path) ? aggregate(gaugeName(name, path), window) : null;
+                return new MessageGauge<double[]>(gauge, values -> values[i], aggregate);
             }).toList();
-            return build(topic, messageMapperFactory.jsonTree(), fieldPollers);
+            var poller = new MqttMonitoring<>(fieldPollers);
+            var extractor = new JsonFieldExtractor(mapper, fields);
+            subscribe(topic, aggregated.isEmpty(), it -> poller.update(extractor.extract(it)));
+            return poller;
+        }
+
+        private static WindowedAggregate aggregate(String name, Duration window) {
+            return WindowedAggregate.build().name(name).help(name).window(window).register();
+        }
+
+        /**
+         * Subscribes a filter with wildcards. Each wildcard becomes one of
+         * {@code labels}, and at most {@code maxTopics} topics are kept.
+         */
+        public WildcardMqttMonitoring build(String name, String filter, List<String> labels, Collection<String> paths,
+                int maxTopics) throws IOException {
+
+            var labelNames = labels.toArray(String[]::new);
+            var monitoring = new WildcardMqttMonitoring(filter, labels, List.copyOf(paths),
+                    path -> gaugeFactory.build(gaugeName(name, path), maxTopics, labelNames), mapper);
+            var registration = registry.register(filter, "mqtt", null, null);
+            mqtt.subscribe(filter, (topic, message) -> registration.measure(() -> monitoring.update(topic, message)));
+            return monitoring;
         }
 
         private static String gaugeName(String topic, String path) {
@@ -51,13 +96,39 @@ public class MqttMonitoring<MESSAGE> {
                 Collection<MessageGauge<MESSAGE>> fieldPollers) throws IOException {
 
             var poller = new MqttMonitoring<>(fieldPollers);
-            mqtt.subscribe(topic, it -> {
-                var message = messageMapper.map(it);
+            subscribe(topic, true, it -> {
+                var message = messageMapper.map(new String(it, UTF_8));
                 poller.update(message);
             });
             return poller;
         }
 
+        @FunctionalInterface
+        private interface PayloadUpdate {
+            void update(byte[] payload) throws Exception;
+        }
+
+        private void subscribe(String topic, boolean coalescable, PayloadUpdate update) throws IOException {
+            var registration = registry.register(topic, "mqtt", null, null);
+            mqtt.subscribe(topic, new Mqtt.Consumer() {
+
+                @Override
+                public void consume(String message) throws Exception {
+                    consume(message.getBytes(UTF_8));
+                }
+
+                @Override
+                public void consume(byte[] message) throws Exception {
+                    registration.measure(() -> update.update(message));
+                }
+
+                @Override
+                public boolean isCoalescable() {
+                    return coalescable;
+                }
+            });
+        }
+
         @Override
         public void close() throws Exception {
             mqtt.close();
@@ -67,13 +138,25 @@ public class MqttMonitoring<MESSAGE> {
     @RequiredArgsConstructor
     static final class MessageGauge<MESSAGE> {
 
-        private final Gauge gauge;
+        private final TrackedGauge gauge;
 
         private final Function<MESSAGE, Double> fieldMapper;
 
+        private final WindowedAggregate aggregate;
+
+        MessageGauge(TrackedGauge gauge, Function<MESSAGE, Double> fieldMapper) {
+            this(gauge, fieldMapper, null);
+        }
+
         void update(MESSAGE message) {
-            var value = fieldMapper.apply(message);
+            set(fieldMapper.apply(message));
+        }
+
+        private void set(double value) {
             gauge.set(value);
+            if (aggregate != null) {
+                aggregate.record(value);
+            }
         }
     }
 
@@ -0,0 +1,198 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import io.prometheus.client.Counter;
+
+/**
+ * Rewrites the non-numeric numbers of sloppy JSON while it is read.
+ *
+ * Sensors send tokens like {@code nan} or {@code -inf}. Outside of strings
+ * those are replaced by {@code NaN}, {@code Infinity} or {@code -Infinity},
+ * which a parser with {@code JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS}
+ * accepts. Closing the stream counts whether it was repaired, i.e. whether a
+ * token's bytes actually changed.
+ */
+final class NonNumericFilter extends InputStream {
+
+    private static final Counter REPAIRED = Counter.build() //
+            .name("mqtt_repaired_messages") //
+            .help("MQTT messages with non-numeric numbers") //
+            .register();
+
+    private record Replacement(byte[] token, byte[] replacement) {
+
+        Replacement(String token, String replacement) {
+            this(token.getBytes(US_ASCII), replacement.getBytes(US_ASCII));
+        }
+    }
+
+    private static final List<Replacement> REPLACEMENTS = List.of( //
+            new Replacement("nan", "NaN"), //
+            new Replacement("-nan", "NaN"), //
+            new Replacement("+nan", "NaN"), //
+            new Replacement("inf", "Infinity"), //
+            new Replacement("+inf", "Infinity"), //
+            new Replacement("-inf", "-Infinity"), //
+            new Replacement("infinity", "Infinity"), //
+            new Replacement("+infinity", "Infinity"), //
+            new Replacement("-infinity", "-Infinity"));
+
+    private final byte[] json;
+    private int position;
+    private byte[] replacement;
+    private int replacementPosition;
+    private boolean inString;
+    private boolean escaped;
+    private boolean repaired;
+    private boolean closed;
+
+    NonNumericFilter(byte[] json) {
+        this.json = json;
+    }
+
+    @Override
+    public int read() {
+        if (replacement != null) {
+            var b = replacement[replacementPosition++];
+            if (replacementPosition == replacement.length) {
+                replacement = null;
+            }
+            return b;
+        }
+        if (position >= json.length) {
+            return -1;
+        }
+
+        var b = json[position++];
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (b == '\\') {
+                escaped = true;
+            } else if (b == '"') {
+                inString = false;
+            }
+            return b & 0xFF;
+        }
+        if (b == '"') {
+            inString = true;
+            return b;
+        }
+        if (isLetter(b) || ((b == '-' || b == '+') && position < json.length && isLetter(json[position]))) {
+            var start = position - 1;
+            var end = position;
+            while (end < json.length && isLetter(json[end])) {
+                end++;
+            }
+            var match = replacement(start, end);
+            if (match != null) {
+                repaired |= !Arrays.equals(json, start, end, match, 0, match.length);
+                position = end;
+                replacement = match;
+                replacementPosition = 0;
+                return read();
+            }
+        }
+        return b & 0xFF;
+    }
+
+    /**
+     * Copies runs of bytes which need no rewriting at once, and falls back to
+     * {@link #read()} for everything else.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        Objects.checkFromIndexSize(offset, length, buffer.length);
+        if (length == 0) {
+            return 0;
+        }
+        var n = 0;
+        while (n < length) {
+            var run = replacement == null ? plainRun(Math.min(length - n, json.length - position)) : 0;
+            if (run > 0) {
+                System.arraycopy(json, position, buffer, offset + n, run);
+                position += run;
+                n += run;
+                continue;
+            }
+            var b = read();
+            if (b == -1) {
+                break;
+            }
+            buffer[offset + n++] = (byte) b;
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    /**
+     * @return the number of following bytes which {@link #read()} would pass
+     *         through unchanged and without changing its state
+     */
+    private int plainRun(int max) {
+        var end = position;
+        var limit = position + max;
+        if (inString) {
+            if (escaped) {
+                return 0;
+            }
+            while (end < limit && json[end] != '"' && json[end] != '\\') {
+                end++;
+            }
+        } else {
+            while (end < limit && !isSpecial(json[end])) {
+                end++;
+            }
+        }
+        return end - position;
+    }
+
+    private static boolean isSpecial(byte b) {
+        return b == '"' || b == '-' || b == '+' || isLetter(b);
+    }
+
+    private byte[] replacement(int start, int end) {
+        for (var candidate : REPLACEMENTS) {
+            if (equalsIgnoreCase(candidate.token, start, end)) {
+                return candidate.replacement;
+            }
+        }
+        return null;
+    }
+
+    private boolean equalsIgnoreCase(byte[] token, int start, int end) {
+        if (token.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < token.length; i++) {
+            if (Character.toLowerCase(json[start + i]) != token[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    boolean isRepaired() {
+        return repaired;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (repaired) {
+            REPAIRED.inc();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Monitors all topics which match a filter with wildcards.
+ *
+ * Each metric is a gauge with one label per wildcard of the filter. The value
+ * of a {@code +} label is its topic level, the value of a {@code #} label is
+ * the remaining topic. A topic's series appear with its first message and
+ * vanish when they become stale or when the gauge's series cap evicts them.
+ */
+public final class WildcardMqttMonitoring {
+
+    private final String filter;
+    private final int[] singleLevels;
+    private final int multiLevel;
+    private final List<TrackedGauge> gauges;
+    private final JsonFieldExtractor extractor;
+
+    WildcardMqttMonitoring(String filter, List<String> labelNames, List<String> paths,
+            Function<String, TrackedGauge> gauge, ObjectMapper mapper) {
+
+        this.filter = filter;
+        var levels = filter.split("/", -1);
+        var singleLevels = new ArrayList<Integer>();
+        var multiLevel = -1;
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i].equals("+")) {
+                singleLevels.add(i);
+            } else if (levels[i].equals("#")) {
+                multiLevel = i;
+            }
+        }
+        this.singleLevels = singleLevels.stream().mapToInt(Integer::intValue).toArray();
+        this.multiLevel = multiLevel;
+
+        var wildcards = singleLevels.size() + (multiLevel >= 0 ? 1 : 0);
+        if (wildcards == 0) {
+            throw new IllegalArgumentException(filter + " has no wildcard");
+        }
+        if (labelNames.size() != wildcards) {
+            throw new IllegalArgumentException(
+                    String.format("%s needs %d labels, but has %s", filter, wildcards, labelNames));
+        }
+
+        this.extractor = new JsonFieldExtractor(mapper, paths);
+        this.gauges = paths.stream().map(gauge).toList();
+    }
+
+    void update(String topic, byte[] message) {
+        var labels = labels(topic);
+        var values = extractor.extract(message);
+        for (int i = 0; i < values.length; i++) {
+            gauges.get(i).labels(labels).set(values[i]);
+        }
+    }
+
+    String[] labels(String topic) {
+        var levels = topic.split("/", -1);
+        var labels = new String[singleLevels.length + (multiLevel >= 0 ? 1 : 0)];
+        for (int i = 0; i < singleLevels.length; i++) {
+            labels[i] = levels[singleLevels[i]];
+        }
+        if (multiLevel >= 0) {
+            labels[labels.length - 1] = String.join("/", Arrays.copyOfRange(levels, multiLevel, levels.length));
+        }
+        return labels;
+    }
+
+    @Override
+    public String toString() {
+        return filter;
+    }
+}
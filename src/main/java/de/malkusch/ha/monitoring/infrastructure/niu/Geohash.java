@@ -0,0 +1,53 @@
+package de.malkusch.ha.monitoring.infrastructure.niu;
+
+/**
+ * Encodes a position as the geohash of its cell. A precision of 7 is a cell of
+ * about 150m.
+ */
+final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    static String encode(double lat, double lng, int precision) {
+        if (precision < 1 || precision > 12) {
+            throw new IllegalArgumentException("Precision must be within 1 and 12, was " + precision);
+        }
+        double minLat = -90, maxLat = 90;
+        double minLng = -180, maxLng = 180;
+        var hash = new StringBuilder(precision);
+        var even = true;
+        var bit = 0;
+        var character = 0;
+        while (hash.length() < precision) {
+            if (even) {
+                var mid = (minLng + maxLng) / 2;
+                if (lng >= mid) {
+                    character = (character << 1) | 1;
+                    minLng = mid;
+                } else {
+                    character <<= 1;
+                    maxLng = mid;
+                }
+            } else {
+                var mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    character = (character << 1) | 1;
+                    minLat = mid;
+                } else {
+                    character <<= 1;
+                    maxLat = mid;
+                }
+            }
+            even = !even;
+            if (++bit == 5) {
+                hash.append(BASE32[character]);
+                bit = 0;
+                character = 0;
+            }
+        }
+        return hash.toString();
+    }
+}
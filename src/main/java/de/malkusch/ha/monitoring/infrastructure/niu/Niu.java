@@ -1,33 +1,185 @@
 package de.malkusch.ha.monitoring.infrastructure.niu;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
 import de.malkusch.niu.Niu.BatteryInfo;
 import de.malkusch.niu.Niu.Odometer;
 import de.malkusch.niu.Niu.Vehicle;
 import de.malkusch.niu.Niu.VehicleInfo;
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
 
-@RequiredArgsConstructor
-public final class Niu {
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
-    private final de.malkusch.niu.Niu api;
+/**
+ * All calls share one rate budget, so that polling several vehicles in
+ * parallel doesn't exceed the API's limit.
+ *
+ * The login happens with the first call. It is repeated after the API answered
+ * a call with an error, as that may be an expired session. A failure of the
+ * transport keeps the session.
+ * The last known vehicles can be restored from a previous run, so that a
+ * restart doesn't need the API at all before the first poll.
+ */
+@Slf4j
+public class Niu {
+
+    @FunctionalInterface
+    interface Login {
+        de.malkusch.niu.Niu login() throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+        T call(de.malkusch.niu.Niu api) throws IOException;
+    }
+
+    private final Login login;
     private final CircuitBreaker<Object> breaker;
+    private final long interval;
+    private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+    private final ObjectMapper mapper;
+    private final AtomicReference<de.malkusch.niu.Niu> api = new AtomicReference<>();
+    private final ReentrantLock loginLock = new ReentrantLock();
+    private volatile Vehicle[] knownVehicles;
+
+    public Niu(Login login, CircuitBreaker<Object> breaker, double requestsPerMinute, ObjectMapper mapper) {
+        if (requestsPerMinute <= 0) {
+            throw new IllegalArgumentException("Requests per minute must be positive, was " + requestsPerMinute);
+        }
+        this.login = login;
+        this.breaker = breaker;
+        this.interval = (long) (60e9 / requestsPerMinute);
+        this.mapper = mapper;
+    }
+
+    public Odometer odometer(String serialNumber) throws IOException, InterruptedException {
+        return call(api -> api.odometer(serialNumber));
+    }
+
+    public Vehicle[] vehicles() throws IOException, InterruptedException {
+        var vehicles = call(api -> api.vehicles());
+        knownVehicles = vehicles;
+        return vehicles;
+    }
+
+    /**
+     * The last known vehicles, which are only queried if none are known.
+     */
+    public Vehicle[] knownVehicles() throws IOException, InterruptedException {
+        var vehicles = knownVehicles;
+        if (vehicles != null) {
+            return vehicles;
+        }
+        return vehicles();
+    }
+
+    public VehicleInfo vehicle(String serialNumber) throws IOException, InterruptedException {
+        return call(api -> api.vehicle(serialNumber));
+    }
+
+    public BatteryInfo batteryInfo(String serialNumber) throws IOException, InterruptedException {
+        return call(api -> api.batteryInfo(serialNumber));
+    }
+
+    private <T> T call(Call<T> call) throws IOException, InterruptedException {
+        awaitBudget();
+        return breaker.get(() -> {
+            var api = api();
+            try {
+                return call.call(api);
+
+            } catch (IOException e) {
+                if (isSessionFailure(e) && this.api.compareAndSet(api, null)) {
+                    log.info("NIU session failed, logging in again with the next call: {}", e.getMessage());
+                }
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Reserves the next free slot of the budget and sleeps interruptibly until
+     * then, so that closing the poller doesn't wait for the budget. An
+     * interrupted wait leaves its slot unused.
+     */
+    private void awaitBudget() throws InterruptedException {
+        var now = System.nanoTime();
+        var previous = nextSlot.getAndUpdate(next -> Math.max(next, now) + interval);
+        var wait = Math.max(previous, now) - now;
+        if (wait > 0) {
+            NANOSECONDS.sleep(wait);
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException("Interrupted while waiting for the NIU budget");
+        }
+    }
+
+    /**
+     * The API doesn't expose the HTTP status of an error answer, so only the
+     * exception type distinguishes a transport failure from an answer.
+     */
+    private static boolean isSessionFailure(IOException e) {
+        return !isTransportFailure(e) && !isTransportFailure(e.getCause());
+    }
 
-    public Odometer odometer(String serialNumber) throws IOException {
-        return breaker.get(() -> api.odometer(serialNumber));
+    private static boolean isTransportFailure(Throwable e) {
+        return e instanceof HttpTimeoutException || e instanceof ConnectException || e instanceof SocketException
+                || e instanceof UnknownHostException || e instanceof InterruptedIOException;
     }
 
-    public Vehicle[] vehicles() throws IOException {
-        return breaker.get(() -> api.vehicles());
+    private de.malkusch.niu.Niu api() throws IOException {
+        var api = this.api.get();
+        if (api != null) {
+            return api;
+        }
+        loginLock.lock();
+        try {
+            api = this.api.get();
+            if (api == null) {
+                log.info("Logging in to NIU");
+                api = login.login();
+                this.api.set(api);
+            }
+            return api;
+
+        } finally {
+            loginLock.unlock();
+        }
+    }
+
+    void restoreVehicles(String value) {
+        if (value.isBlank()) {
+            return;
+        }
+        try {
+            knownVehicles = mapper.readValue(value, Vehicle[].class);
+            log.info("Restored NIU vehicles {}", Arrays.toString(knownVehicles));
+
+        } catch (JacksonException e) {
+            log.warn("Ignoring unreadable NIU vehicles {}", value, e);
+        }
     }
 
-    public VehicleInfo vehicle(String serialNumber) throws IOException {
-        return breaker.get(() -> api.vehicle(serialNumber));
+    String serializeVehicles() {
+        var vehicles = knownVehicles;
+        if (vehicles == null) {
+            return "";
+        }
+        return mapper.writeValueAsString(vehicles);
     }
 
-    public BatteryInfo batteryInfo(String serialNumber) throws IOException {
-        return breaker.get(() -> api.batteryInfo(serialNumber));
+    public CircuitBreaker<?> circuitBreaker() {
+        return breaker;
     }
 }
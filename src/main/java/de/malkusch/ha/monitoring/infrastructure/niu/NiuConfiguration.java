@@ -1,5 +1,7 @@
 package de.malkusch.ha.monitoring.infrastructure.niu;
 
+import de.malkusch.ha.monitoring.infrastructure.persistence.StateStorage;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -8,9 +10,11 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
+import tools.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
 
 @Configuration
 @Slf4j
@@ -19,6 +23,10 @@ import java.time.Duration;
 class NiuConfiguration {
 
     private final NiuProperties properties;
+    private final ScheduledExecutorService scheduler;
+    private final PollerRegistry registry;
+    private final StateStorage storage;
+    private final ObjectMapper mapper;
 
     @Component
     @ConfigurationProperties("niu")
@@ -28,21 +36,35 @@ class NiuConfiguration {
         private String password;
         private String countryCode;
         private Duration queryRate;
+        private Duration activeRate;
+        private Duration maxParkedRate;
+        private Duration odometerRate;
+        private Duration fleetRate;
+        private double requestsPerMinute;
+        private int geohashPrecision;
+        private int positionHistory;
+        private Duration staleAfter;
         private CircuitBreaker.Properties circuitBreaker;
     }
 
     @Bean
-    Niu niu() throws IOException {
-        var api = new de.malkusch.niu.Niu.Builder(properties.account, properties.password, properties.countryCode)
-                .build();
+    Niu niu() {
+        Niu.Login login = () -> new de.malkusch.niu.Niu.Builder(properties.account, properties.password,
+                properties.countryCode).build();
 
         var circuitBreaker = new CircuitBreaker<Object>("NIU", properties.circuitBreaker, Throwable.class);
-        log.info("Configured Niu(account={}, circuit-breaker({}))", properties.account, circuitBreaker);
-        return new Niu(api, circuitBreaker);
+        log.info("Configured Niu(account={}, requests-per-minute={}, circuit-breaker({}))", properties.account,
+                properties.requestsPerMinute, circuitBreaker);
+        var niu = new Niu(login, circuitBreaker, properties.requestsPerMinute, mapper);
+        storage.persist("niu.vehicles", niu::restoreVehicles, niu::serializeVehicles);
+        return niu;
     }
 
     @Bean
-    NiuPoller niuPoller() throws IOException {
-        return new NiuPoller(niu(), properties.queryRate);
+    NiuPoller niuPoller() throws IOException, InterruptedException {
+        var rates = new NiuPoller.Rates(properties.activeRate, properties.queryRate, properties.maxParkedRate,
+                properties.odometerRate, properties.fleetRate);
+        var position = new NiuPoller.Position(properties.geohashPrecision, properties.positionHistory);
+        return new NiuPoller(niu(), scheduler, registry, rates, position, properties.staleAfter);
     }
 }
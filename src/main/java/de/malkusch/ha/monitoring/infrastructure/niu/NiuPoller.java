@@ -1,131 +1,408 @@
 package de.malkusch.ha.monitoring.infrastructure.niu;
 
-import de.malkusch.ha.shared.infrastructure.scheduler.Schedulers;
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry.Registration;
 import de.malkusch.niu.Niu.BatteryInfo;
 import de.malkusch.niu.Niu.Odometer;
 import de.malkusch.niu.Niu.Vehicle;
 import de.malkusch.niu.Niu.VehicleInfo;
+import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.Gauge;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 import static de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreakerExceptionHandler.withCircuitBreakerLogging;
-import static de.malkusch.ha.shared.infrastructure.scheduler.Schedulers.singleThreadScheduler;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 
+/**
+ * Polls the NIU cloud with a rate which adapts to each scooter's activity.
+ *
+ * While a scooter is riding or charging, battery and vehicle are polled with
+ * the active rate. While it is parked, the rate backs off exponentially from
+ * the parked rate up to the max parked rate, as long as the vehicle's state
+ * doesn't change. The odometer is polled with its own, slow rate.
+ *
+ * Each query runs as its own task, so vehicles are polled in parallel within
+ * the {@link Niu}'s rate budget. The fleet is rediscovered periodically; its
+ * gauges follow vehicles being added or removed.
+ */
 @Slf4j
 public class NiuPoller implements AutoCloseable {
 
-    private final Duration rate;
-    private final ScheduledExecutorService scheduler = singleThreadScheduler("niu");
+    private static final Gauge INTERVAL = Gauge.build() //
+            .name("niu_poll_interval_seconds") //
+            .help("Current interval of a NIU query") //
+            .labelNames("vehicle", "query") //
+            .register();
 
-    NiuPoller(Niu niu, Duration rate) throws IOException {
-        this.rate = rate;
+    record Rates(Duration active, Duration parked, Duration maxParked, Duration odometer, Duration fleet) {
+    }
+
+    /**
+     * The position is exposed as geohash cell of {@code precision}. At most
+     * {@code history} cells are kept.
+     */
+    record Position(int precision, int history) {
+    }
 
-        for (var vehicle : niu.vehicles()) {
-            log.info("Polling NIU({}) with rate {}", vehicle, rate);
-            {
-                var updates = new VehicleUpdates<>(niu::odometer,
-                        new GaugeUpdate<>(gauge(vehicle, "odometer_days"), simpleUpdate(Odometer::days)),
-                        new GaugeUpdate<>(gauge(vehicle, "odometer_mileage"), simpleUpdate(Odometer::mileage)));
+    private final Rates rates;
+    private final Position position;
+    private final Duration odometerStaleAfter;
+    private final Duration adaptiveStaleAfter;
+    private final ScheduledExecutorService scheduler;
+    private final Niu niu;
+    private final PollerRegistry registry;
+    private final Map<String, VehicleMonitor> fleet = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> fleetDiscovery;
+    private volatile boolean closed;
 
-                scheduleVehicleUpdates(vehicle.serialNumber(), updates);
+    NiuPoller(Niu niu, ScheduledExecutorService scheduler, PollerRegistry registry, Rates rates,
+            Position position, Duration staleAfter) throws IOException, InterruptedException {
+
+        this.rates = rates;
+        this.position = position;
+        this.odometerStaleAfter = staleAfter("odometer", staleAfter, rates.odometer);
+        this.adaptiveStaleAfter = staleAfter("batteryInfo and vehicle", staleAfter, rates.maxParked);
+        this.scheduler = scheduler;
+        this.niu = niu;
+        this.registry = registry;
+
+        discover(niu.knownVehicles());
+        fleetDiscovery = scheduler.scheduleWithFixedDelay(this::rediscover, rates.fleet.toMillis(),
+                rates.fleet.toMillis(), MILLISECONDS);
+    }
+
+    /**
+     * A query's values are stale after the configured duration, but never
+     * before the query missed two updates at its slowest rate.
+     */
+    private static Duration staleAfter(String query, Duration staleAfter, Duration maxRate) {
+        var missedUpdates = maxRate.multipliedBy(2);
+        if (missedUpdates.compareTo(staleAfter) <= 0) {
+            return staleAfter;
+        }
+        log.info("Raising NIU staleness of {} from {} to {}", query, staleAfter, missedUpdates);
+        return missedUpdates;
+    }
+
+    /**
+     * Starts polling new vehicles and stops polling vanished ones.
+     */
+    private synchronized void discover(Vehicle[] discovered) {
+        var vehicles = Arrays.stream(discovered).collect(toMap(Vehicle::serialNumber, identity(), (a, b) -> a));
+        for (var monitor : fleet.values()) {
+            if (!monitor.vehicle.equals(vehicles.get(monitor.vehicle.serialNumber()))) {
+                log.info("Stop polling NIU({})", monitor.vehicle);
+                fleet.remove(monitor.vehicle.serialNumber());
+                monitor.close();
+            }
+        }
+        for (var vehicle : vehicles.values()) {
+            if (!fleet.containsKey(vehicle.serialNumber())) {
+                log.info("Polling NIU({}) with {}", vehicle, rates);
+                fleet.put(vehicle.serialNumber(), monitor(vehicle));
             }
+        }
+    }
+
+    private void rediscover() {
+        try {
+            withCircuitBreakerLogging(() -> discover(niu.vehicles()));
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } catch (Exception e) {
+            log.error("Failed to discover NIU vehicles", e);
+        }
+    }
+
+    private VehicleMonitor monitor(Vehicle vehicle) {
+        var monitor = new VehicleMonitor(vehicle);
+        var activity = monitor.activity;
+        {
+            var updates = new VehicleUpdates<>("odometer", niu::odometer, it -> rates.odometer, ignore(),
+                    new GaugeUpdate<>(monitor.gauge("odometer_days", odometerStaleAfter),
+                            simpleUpdate(Odometer::days)),
+                    new GaugeUpdate<>(monitor.gauge("odometer_mileage", odometerStaleAfter),
+                            simpleUpdate(Odometer::mileage)));
+
+            monitor.schedule(updates);
+        }
 
-            {
-                var updates = new VehicleUpdates<>(niu::batteryInfo,
-                        new GaugeUpdate<>(gauge(vehicle, "battery_temperature"),
-                                simpleUpdate(BatteryInfo::temperature)),
-                        new GaugeUpdate<>(gauge(vehicle, "battery_grade"), simpleUpdate(BatteryInfo::grade)),
-                        new GaugeUpdate<>(gauge(vehicle, "battery_charge"), simpleUpdate(BatteryInfo::charge)),
-                        new GaugeUpdate<>(gauge(vehicle, "battery_isCharging"),
-                                simpleUpdate(it -> it.isCharging() ? 1 : 0)),
-                        new GaugeUpdate<>(gauge(vehicle, "battery_status"), simpleUpdate(BatteryInfo::status)));
-
-                scheduleVehicleUpdates(vehicle.serialNumber(), updates);
+        {
+            var updates = new VehicleUpdates<>("batteryInfo", niu::batteryInfo, ADAPTIVE,
+                    (info, a) -> a.charging(info.isCharging()),
+                    new GaugeUpdate<>(monitor.gauge("battery_temperature"),
+                            simpleUpdate(BatteryInfo::temperature)),
+                    new GaugeUpdate<>(monitor.gauge("battery_grade"), simpleUpdate(BatteryInfo::grade)),
+                    new GaugeUpdate<>(monitor.gauge("battery_charge"), simpleUpdate(BatteryInfo::charge)),
+                    new GaugeUpdate<>(monitor.gauge("battery_isCharging"),
+                            simpleUpdate(it -> it.isCharging() ? 1 : 0)),
+                    new GaugeUpdate<>(monitor.gauge("battery_status"), simpleUpdate(BatteryInfo::status)));
+
+            monitor.schedule(updates);
+        }
+
+        {
+            var updates = new VehicleUpdates<>("vehicle", niu::vehicle, ADAPTIVE,
+                    (info, a) -> a.vehicle(info),
+                    new GaugeUpdate<>(monitor.gauge("shaking"), simpleUpdate(VehicleInfo::shakingValue)),
+                    new GaugeUpdate<>(monitor.gauge("gsm"), simpleUpdate(VehicleInfo::gsm)),
+                    new GaugeUpdate<>(monitor.gauge("gps"), simpleUpdate(VehicleInfo::gps)),
+                    new GaugeUpdate<>(monitor.gauge("ecuBatteryCharge"),
+                            simpleUpdate(VehicleInfo::ecuBatteryCharge)),
+                    new GaugeUpdate<>(monitor.gauge("speed"), simpleUpdate(VehicleInfo::nowSpeed)),
+                    new GaugeUpdate<>(monitor.gauge("vehicleInfo_status"), simpleUpdate(VehicleInfo::status)),
+                    new GaugeUpdate<>(monitor.gauge("leftTime"), simpleUpdate(VehicleInfo::leftTime)),
+                    new GaugeUpdate<>(monitor.gauge("isConnected"), simpleUpdate(it -> it.isConnected() ? 1 : 0)),
+                    new GaugeUpdate<>(monitor.gauge("estimatedMileage"),
+                            simpleUpdate(VehicleInfo::estimatedMileage)),
+                    new GaugeUpdate<>(monitor.gauge("ss_online_sta"), simpleUpdate(VehicleInfo::ss_online_sta)),
+                    new GaugeUpdate<>(monitor.gauge("gpsTimestamp"), timestampUpdate(VehicleInfo::gpsTimestamp)),
+                    new GaugeUpdate<>(monitor.gauge("gsmTimestamp"), timestampUpdate(VehicleInfo::gsmTimestamp)),
+                    new GaugeUpdate<>(monitor.gauge("time"), timestampUpdate(VehicleInfo::time)),
+
+                    new GaugeUpdate<>(monitor.gauge("position_lng"), simpleUpdate(it -> it.position().lng())),
+                    new GaugeUpdate<>(monitor.gauge("position_lat"), simpleUpdate(it -> it.position().lat())),
+                    new GaugeUpdate<>(monitor.positionGauge(), (info, gauge) -> gauge
+                            .labels(Geohash.encode(info.position().lat(), info.position().lng(),
+                                    position.precision()))
+                            .set(1)));
+
+            monitor.schedule(updates);
+        }
+        return monitor;
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
+    }
+
+    private static final Function<Activity, Duration> ADAPTIVE = Activity::rate;
+
+    private static <T> BiConsumer<T, Activity> ignore() {
+        return (result, activity) -> {
+        };
+    }
+
+    private record VehicleUpdates<T>(String name, VehicleQuery<T> query, Function<Activity, Duration> rate,
+            BiConsumer<T, Activity> observe, GaugeUpdate<T>... updates) {
+    }
+
+    private final class Activity {
+
+        private final Queue<VehicleUpdate<?>> adaptive = new ConcurrentLinkedQueue<>();
+        private boolean riding;
+        private boolean charging;
+        private List<Object> lastState;
+        private Duration parkedRate = rates.parked;
+
+        void charging(boolean charging) {
+            boolean wokeUp;
+            synchronized (this) {
+                var wasActive = isActive();
+                this.charging = charging;
+                wokeUp = !wasActive && isActive();
+            }
+            if (wokeUp) {
+                wakeUp();
             }
+        }
 
-            {
-                var updates = new VehicleUpdates<>(niu::vehicle,
-                        new GaugeUpdate<>(gauge(vehicle, "shaking"), simpleUpdate(VehicleInfo::shakingValue)),
-                        new GaugeUpdate<>(gauge(vehicle, "gsm"), simpleUpdate(VehicleInfo::gsm)),
-                        new GaugeUpdate<>(gauge(vehicle, "gps"), simpleUpdate(VehicleInfo::gps)),
-                        new GaugeUpdate<>(gauge(vehicle, "ecuBatteryCharge"),
-                                simpleUpdate(VehicleInfo::ecuBatteryCharge)),
-                        new GaugeUpdate<>(gauge(vehicle, "speed"), simpleUpdate(VehicleInfo::nowSpeed)),
-                        new GaugeUpdate<>(gauge(vehicle, "vehicleInfo_status"), simpleUpdate(VehicleInfo::status)),
-                        new GaugeUpdate<>(gauge(vehicle, "leftTime"), simpleUpdate(VehicleInfo::leftTime)),
-                        new GaugeUpdate<>(gauge(vehicle, "isConnected"), simpleUpdate(it -> it.isConnected() ? 1 : 0)),
-                        new GaugeUpdate<>(gauge(vehicle, "estimatedMileage"),
-                                simpleUpdate(VehicleInfo::estimatedMileage)),
-                        new GaugeUpdate<>(gauge(vehicle, "ss_online_sta"), simpleUpdate(VehicleInfo::ss_online_sta)),
-                        new GaugeUpdate<>(gauge(vehicle, "gpsTimestamp"), timestampUpdate(VehicleInfo::gpsTimestamp)),
-                        new GaugeUpdate<>(gauge(vehicle, "gsmTimestamp"), timestampUpdate(VehicleInfo::gsmTimestamp)),
-                        new GaugeUpdate<>(gauge(vehicle, "time"), timestampUpdate(VehicleInfo::time)),
-
-                        new GaugeUpdate<>(gauge(vehicle, "position_lng"), simpleUpdate(it -> it.position().lng())),
-                        new GaugeUpdate<>(gauge(vehicle, "position_lat"), simpleUpdate(it -> it.position().lat())),
-                        new GaugeUpdate<>(gauge(vehicle, "position", "lng", "lat"), (info, gauge) -> gauge
-                                .labels(Double.toString(info.position().lng()), Double.toString(info.position().lat()))
-                                .set(1)));
-
-                scheduleVehicleUpdates(vehicle.serialNumber(), updates);
+        void vehicle(VehicleInfo info) {
+            boolean wokeUp;
+            synchronized (this) {
+                var wasActive = isActive();
+                riding = info.nowSpeed() > 0;
+                var state = List.<Object>of(info.position(), info.ecuBatteryCharge(), info.status(),
+                        info.isConnected());
+                if (wasActive || isActive() || !state.equals(lastState)) {
+                    parkedRate = rates.parked;
+                } else {
+                    parkedRate = min(parkedRate.multipliedBy(2), rates.maxParked);
+                }
+                lastState = state;
+                wokeUp = !wasActive && isActive();
+            }
+            if (wokeUp) {
+                wakeUp();
             }
         }
-    }
 
-    private record VehicleUpdates<T>(VehicleQuery<T> query, GaugeUpdate<T>... updates) {
+        private boolean isActive() {
+            return riding || charging;
+        }
+
+        synchronized Duration rate() {
+            return isActive() ? rates.active : parkedRate;
+        }
+
+        private void wakeUp() {
+            adaptive.forEach(it -> it.wakeUp(rates.active));
+        }
     }
 
-    private record GaugeUpdate<T>(Gauge gauge, BiConsumer<T, Gauge> update) {
+    private record GaugeUpdate<T>(TrackedGauge gauge, BiConsumer<T, TrackedGauge> update) {
     }
 
-    private static <T> BiConsumer<T, Gauge> simpleUpdate(Function<T, Number> update) {
+    private static <T> BiConsumer<T, TrackedGauge> simpleUpdate(Function<T, Number> update) {
         return (response, gauge) -> gauge.set(update.apply(response).doubleValue());
     }
 
-    private static <T> BiConsumer<T, Gauge> timestampUpdate(Function<T, Instant> update) {
+    private static <T> BiConsumer<T, TrackedGauge> timestampUpdate(Function<T, Instant> update) {
         return (response, gauge) -> gauge.set(update.apply(response).getEpochSecond());
     }
 
     @FunctionalInterface
     private interface VehicleQuery<T> {
-        T query(String sn) throws IOException;
+        T query(String sn) throws IOException, InterruptedException;
     }
 
-    private <T> void scheduleVehicleUpdates(String serialNumber, VehicleUpdates<T> updates) {
-        Runnable task = () -> {
+    private final class VehicleMonitor {
+
+        private final Vehicle vehicle;
+        private final Activity activity = new Activity();
+        private final List<VehicleUpdate<?>> updates = new ArrayList<>();
+        private final List<TrackedGauge> gauges = new ArrayList<>();
+
+        VehicleMonitor(Vehicle vehicle) {
+            this.vehicle = vehicle;
+        }
+
+        TrackedGauge gauge(String name) {
+            return gauge(name, adaptiveStaleAfter);
+        }
+
+        TrackedGauge gauge(String name, Duration staleAfter) {
+            var gaugeName = "niu_" + vehicle.name() + "_" + name;
+            return register(TrackedGauge.build().name(gaugeName).help(gaugeName).staleAfter(staleAfter).create());
+        }
+
+        TrackedGauge positionGauge() {
+            var gaugeName = "niu_" + vehicle.name() + "_position";
+            return register(TrackedGauge.build().name(gaugeName).help(gaugeName).labelNames("geohash")
+                    .staleAfter(adaptiveStaleAfter).maxChildren(position.history()).create());
+        }
+
+        private TrackedGauge register(TrackedGauge gauge) {
+            gauges.add(gauge.register());
+            return gauge;
+        }
+
+        <T> void schedule(VehicleUpdates<T> vehicleUpdates) {
+            var task = new VehicleUpdate<>(vehicle, activity, vehicleUpdates);
+            task.registration = registry.register("niu_" + vehicle.name() + "_" + vehicleUpdates.name, "niu",
+                    () -> scheduler.execute(task), niu.circuitBreaker());
+            if (vehicleUpdates.rate == ADAPTIVE) {
+                activity.adaptive.add(task);
+            }
+            updates.add(task);
+            task.reschedule(Duration.ZERO);
+        }
+
+        void cancel() {
+            updates.forEach(VehicleUpdate::cancel);
+        }
+
+        void close() {
+            cancel();
+            updates.forEach(it -> {
+                registry.unregister(it.registration);
+                INTERVAL.remove(vehicle.name(), it.updates.name);
+            });
+            gauges.forEach(it -> {
+                CollectorRegistry.defaultRegistry.unregister(it);
+                it.removeLastUpdate();
+            });
+        }
+    }
+
+    private final class VehicleUpdate<T> implements Runnable {
+
+        private final Vehicle vehicle;
+        private final Activity activity;
+        private final VehicleUpdates<T> updates;
+        private Registration registration;
+        private ScheduledFuture<?> next;
+        private boolean cancelled;
+
+        VehicleUpdate(Vehicle vehicle, Activity activity, VehicleUpdates<T> updates) {
+            this.vehicle = vehicle;
+            this.activity = activity;
+            this.updates = updates;
+        }
+
+        @Override
+        public void run() {
             try {
-                withCircuitBreakerLogging(() -> {
-                    var result = updates.query().query(serialNumber);
+                withCircuitBreakerLogging(() -> registration.measure(() -> {
+                    var result = updates.query().query(vehicle.serialNumber());
                     for (var update : updates.updates) {
                         update.update.accept(result, update.gauge);
                     }
+                    updates.observe.accept(result, activity);
                     log.debug("NIU updated");
-                });
+                }));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
             } catch (Exception e) {
                 log.error("Failed to update niu's metric", e);
+
+            } finally {
+                reschedule(updates.rate.apply(activity));
             }
-        };
+        }
 
-        task.run();
-        scheduler.scheduleAtFixedRate(task, rate.toSeconds(), rate.toSeconds(), SECONDS);
-    }
+        synchronized void wakeUp(Duration delay) {
+            if (next != null && next.getDelay(MILLISECONDS) > delay.toMillis() && next.cancel(false)) {
+                log.debug("Waking up NIU({}) {}", vehicle.name(), updates.name);
+                reschedule(delay);
+            }
+        }
+
+        private synchronized void reschedule(Duration delay) {
+            if (next != null) {
+                next.cancel(false);
+            }
+            if (closed || cancelled) {
+                return;
+            }
+            next = scheduler.schedule(this, delay.toMillis(), MILLISECONDS);
+            registration.scheduled(next);
+            INTERVAL.labels(vehicle.name(), updates.name).set(delay.toSeconds());
+        }
 
-    private static Gauge gauge(Vehicle vehicle, String name, String... labels) {
-        var prefix = "niu_" + vehicle.name();
-        var gaugeName = prefix + "_" + name;
-        return Gauge.build().name(gaugeName).help(gaugeName).labelNames(labels).register();
+        synchronized void cancel() {
+            cancelled = true;
+            if (next != null) {
+                next.cancel(true);
+            }
+        }
     }
 
     @Override
-    public void close() throws Exception {
-        Schedulers.close(scheduler);
+    public void close() {
+        closed = true;
+        fleetDiscovery.cancel(false);
+        fleet.values().forEach(VehicleMonitor::cancel);
     }
 }
@@ -1,20 +1,57 @@
 package de.malkusch.ha.monitoring.infrastructure.persistence;
 
+import java.time.Duration;
+import java.time.Instant;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import io.prometheus.client.Gauge;
-import lombok.RequiredArgsConstructor;
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class GaugeFactory {
 
     private final StateStorage stateStorage;
+    private final Duration staleAfter;
+
+    GaugeFactory(StateStorage stateStorage, @Value("${monitoring.mqtt-stale-after}") Duration staleAfter) {
+        this.stateStorage = stateStorage;
+        this.staleAfter = staleAfter;
+    }
 
-    public Gauge build(String name) {
-        var gauge = Gauge.build().name(name).help(name).create();
-        stateStorage.persistDouble(name, gauge::set, gauge::get);
+    public TrackedGauge build(String name) {
+        var gauge = TrackedGauge.build().name(name).help(name).staleAfter(staleAfter).create();
+        stateStorage.persist(name, it -> restore(gauge, it), () -> persisted(gauge));
         gauge.register();
         return gauge;
     }
+
+    /**
+     * A value is persisted as {@code <value>@<epoch millis of its last update>},
+     * so that a restored value keeps its age. A value without update time is
+     * discarded, as its age is unknown.
+     */
+    private static String persisted(TrackedGauge gauge) {
+        return gauge.lastUpdate().map(it -> gauge.get() + "@" + it.toEpochMilli()).orElse("");
+    }
+
+    private static void restore(TrackedGauge gauge, String persisted) {
+        var parts = persisted.split("@");
+        if (parts.length != 2) {
+            log.debug("Discarding persisted value without update time: {}", persisted);
+            return;
+        }
+        gauge.restore(Double.parseDouble(parts[0]), Instant.ofEpochMilli(Long.parseLong(parts[1])));
+    }
+
+    /**
+     * Builds a gauge whose children are created on demand. Its values aren't
+     * persisted, and at most {@code maxSeries} children are kept.
+     */
+    public TrackedGauge build(String name, int maxSeries, String... labelNames) {
+        return TrackedGauge.build().name(name).help(name).labelNames(labelNames).staleAfter(staleAfter)
+                .maxChildren(maxSeries).register();
+    }
 }
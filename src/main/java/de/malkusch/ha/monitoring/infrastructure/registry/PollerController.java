@@ -0,0 +1,36 @@
+package de.malkusch.ha.monitoring.infrastructure.registry;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/pollers")
+@RequiredArgsConstructor
+class PollerController {
+
+    private final PollerRegistry registry;
+
+    @GetMapping
+    List<PollerRegistry.Status> pollers() {
+        return registry.status();
+    }
+
+    @PostMapping("/refresh")
+    ResponseEntity<Void> refresh(@RequestParam String name) {
+        var status = switch (registry.trigger(name)) {
+            case TRIGGERED -> HttpStatus.ACCEPTED;
+            case UNKNOWN -> HttpStatus.NOT_FOUND;
+            case UNSUPPORTED -> HttpStatus.CONFLICT;
+            case BUSY -> HttpStatus.TOO_MANY_REQUESTS;
+        };
+        return ResponseEntity.status(status).build();
+    }
+}
@@ -0,0 +1,169 @@
+package de.malkusch.ha.monitoring.infrastructure.registry;
+
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Keeps track of every poller and subscription for runtime introspection.
+ */
+@Service
+@Slf4j
+public class PollerRegistry {
+
+    /**
+     * A poller can be triggered at most once within this interval.
+     */
+    private static final Duration MIN_TRIGGER_INTERVAL = Duration.ofSeconds(5);
+
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    public record Status(String name, String type, Instant lastRun, Long lastLatencyMillis, Instant lastSuccess,
+            String lastError, Instant nextRun, String circuitBreaker, boolean triggerable) {
+    }
+
+    public enum TriggerResult {
+        TRIGGERED, UNKNOWN, UNSUPPORTED, BUSY
+    }
+
+    @FunctionalInterface
+    public interface Update<E1 extends Throwable, E2 extends Throwable> {
+        void run() throws E1, E2;
+    }
+
+    public final class Registration {
+
+        private final String name;
+        private final String type;
+        private final Runnable trigger;
+        private final CircuitBreaker<?> circuitBreaker;
+
+        private volatile Instant lastRun;
+        private volatile Duration lastLatency;
+        private volatile Instant lastSuccess;
+        private volatile String lastError;
+        private volatile ScheduledFuture<?> next;
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicLong lastTrigger = new AtomicLong(System.nanoTime() - MIN_TRIGGER_INTERVAL.toNanos());
+
+        private Registration(String name, String type, Runnable trigger, CircuitBreaker<?> circuitBreaker) {
+            this.name = name;
+            this.type = type;
+            this.trigger = trigger;
+            this.circuitBreaker = circuitBreaker;
+        }
+
+        public <E1 extends Throwable, E2 extends Throwable> void measure(Update<E1, E2> update) throws E1, E2 {
+            var start = System.nanoTime();
+            running.incrementAndGet();
+            try {
+                update.run();
+                succeeded(Duration.ofNanos(System.nanoTime() - start));
+
+            } catch (Throwable e) {
+                failed(Duration.ofNanos(System.nanoTime() - start), e);
+                throw e;
+
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        /**
+         * Claims a trigger unless an update is running or the last trigger was
+         * within {@link PollerRegistry#MIN_TRIGGER_INTERVAL}.
+         */
+        private boolean claimTrigger() {
+            if (running.get() > 0) {
+                return false;
+            }
+            var now = System.nanoTime();
+            var last = lastTrigger.get();
+            return now - last >= MIN_TRIGGER_INTERVAL.toNanos() && lastTrigger.compareAndSet(last, now);
+        }
+
+        public void succeeded(Duration latency) {
+            lastRun = Instant.now();
+            lastLatency = latency;
+            lastSuccess = lastRun;
+            lastError = null;
+        }
+
+        public void failed(Duration latency, Throwable error) {
+            lastRun = Instant.now();
+            lastLatency = latency;
+            lastError = error.toString();
+        }
+
+        /**
+         * The next run is read from the future's remaining delay.
+         */
+        public void scheduled(ScheduledFuture<?> next) {
+            this.next = next;
+        }
+
+        private Status status() {
+            var next = this.next;
+            var nextRun = next == null || next.isDone() ? null
+                    : Instant.now().plusNanos(Math.max(0, next.getDelay(NANOSECONDS)));
+            var latency = lastLatency;
+            return new Status(name, type, lastRun, latency == null ? null : latency.toMillis(), lastSuccess,
+                    lastError, nextRun, circuitBreaker == null ? null : circuitBreaker.state(), trigger != null);
+        }
+    }
+
+    /**
+     * @param trigger
+     *            Starts an immediate refresh asynchronously, or null if the
+     *            poller can't be triggered.
+     * @param circuitBreaker
+     *            nullable
+     */
+    public Registration register(String name, String type, Runnable trigger, CircuitBreaker<?> circuitBreaker) {
+        var registration = new Registration(name, type, trigger, circuitBreaker);
+        if (registrations.putIfAbsent(name, registration) != null) {
+            throw new IllegalStateException(String.format("Poller %s is already registered", name));
+        }
+        return registration;
+    }
+
+    public void unregister(Registration registration) {
+        registrations.remove(registration.name, registration);
+    }
+
+    public List<Status> status() {
+        return registrations.values().stream() //
+                .map(Registration::status) //
+                .sorted(Comparator.comparing(Status::type).thenComparing(Status::name)) //
+                .toList();
+    }
+
+    public TriggerResult trigger(String name) {
+        var registration = registrations.get(name);
+        if (registration == null) {
+            return TriggerResult.UNKNOWN;
+        }
+        if (registration.trigger == null) {
+            return TriggerResult.UNSUPPORTED;
+        }
+        if (!registration.claimTrigger()) {
+            log.debug("Refused triggering {}: update is running or was triggered recently", name);
+            return TriggerResult.BUSY;
+        }
+        log.info("Triggering {}", name);
+        registration.trigger.run();
+        return TriggerResult.TRIGGERED;
+    }
+}
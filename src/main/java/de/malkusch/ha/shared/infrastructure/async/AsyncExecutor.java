@@ -0,0 +1,12 @@
+package de.malkusch.ha.shared.infrastructure.async;
+
+import de.malkusch.ha.shared.infrastructure.async.AsyncService.Task;
+
+@FunctionalInterface
+public interface AsyncExecutor {
+
+    /**
+     * @return false if the task was rejected and will not run
+     */
+    boolean executeAsync(Task task);
+}
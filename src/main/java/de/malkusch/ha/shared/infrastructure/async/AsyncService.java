@@ -1,21 +1,50 @@
 package de.malkusch.ha.shared.infrastructure.async;
 
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 
 import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
-public final class AsyncService {
+public final class AsyncService implements AsyncExecutor {
+
+    private static final Gauge IN_FLIGHT = Gauge.build() //
+            .name("async_tasks_in_flight") //
+            .help("Running tasks of a bounded task group") //
+            .labelNames("group") //
+            .register();
+
+    private static final Counter REJECTED = Counter.build() //
+            .name("async_tasks_rejected") //
+            .help("Tasks which were rejected because the task group's concurrency limit was reached") //
+            .labelNames("group") //
+            .register();
+
+    private static final Counter CANCELLED = Counter.build() //
+            .name("async_tasks_cancelled") //
+            .help("Tasks which were interrupted because they exceeded the task group's deadline") //
+            .labelNames("group") //
+            .register();
 
     private final ThreadFactory factory = Thread //
             .ofVirtual() //
             .uncaughtExceptionHandler((t, e) -> log.error("Uncaught exception in thread {}", t, e)) //
             .factory();
 
+    private final ScheduledExecutorService scheduler;
+
     @FunctionalInterface
     public interface Task {
         void run() throws Exception;
@@ -25,17 +54,105 @@ public final class AsyncService {
         return () -> executeAsync(runnable::run);
     }
 
-    public void executeAsync(Task task) {
-        factory.newThread((() -> {
+    @Override
+    public boolean executeAsync(Task task) {
+        factory.newThread(() -> run(task)).start();
+        return true;
+    }
+
+    private static void run(Task task) {
+        try {
+            task.run();
+
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+
+        } catch (Throwable e) {
+            log.error("Error in async task", e);
+        }
+    }
+
+    /**
+     * Runs at most {@code concurrency} tasks at once and rejects any further
+     * task. A task which is still running after {@code deadline} gets
+     * interrupted.
+     */
+    public AsyncExecutor boundedGroup(String name, int concurrency, Duration deadline) {
+        log.info("Configured task group {} with concurrency {} and deadline {}", name, concurrency, deadline);
+        return new BoundedTaskGroup(name, concurrency, deadline);
+    }
+
+    private final class BoundedTaskGroup implements AsyncExecutor {
+
+        private final String name;
+        private final Semaphore permits;
+        private final Duration deadline;
+
+        BoundedTaskGroup(String name, int concurrency, Duration deadline) {
+            if (concurrency <= 0) {
+                throw new IllegalArgumentException("Concurrency must be positive, but was " + concurrency);
+            }
+            this.name = name;
+            this.permits = new Semaphore(concurrency);
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean executeAsync(Task task) {
+            if (!permits.tryAcquire()) {
+                REJECTED.labels(name).inc();
+                log.warn("Rejected task in group {}: concurrency limit reached", name);
+                return false;
+            }
             try {
-                task.run();
+                new BoundedTask(task).start();
+                return true;
+
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+
+        private final class BoundedTask implements Runnable {
+
+            private final Task task;
+            private final Thread thread;
+            private volatile ScheduledFuture<?> timeout;
+            private volatile boolean done;
+
+            BoundedTask(Task task) {
+                this.task = task;
+                this.thread = factory.newThread(this);
+            }
+
+            void start() {
+                IN_FLIGHT.labels(name).inc();
+                timeout = scheduler.schedule(this::cancel, deadline.toNanos(), NANOSECONDS);
+                thread.start();
+            }
+
+            private void cancel() {
+                if (done) {
+                    return;
+                }
+                CANCELLED.labels(name).inc();
+                log.warn("Interrupting task in group {}: deadline {} exceeded", name, deadline);
+                thread.interrupt();
+            }
 
-            } catch (InterruptedException e) {
-                currentThread().interrupt();
+            @Override
+            public void run() {
+                try {
+                    AsyncService.run(task);
 
-            } catch (Throwable e) {
-                log.error("Error in async task", e);
+                } finally {
+                    done = true;
+                    timeout.cancel(false);
+                    IN_FLIGHT.labels(name).dec();
+                    permits.release();
+                }
             }
-        })).start();
+        }
     }
 }
@@ -2,6 +2,7 @@ package de.malkusch.ha.shared.infrastructure.buderus;
 
 import java.io.IOException;
 import java.time.Duration;
+import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -28,6 +29,20 @@ class BuderusConfiguration {
         private String host;
         private Duration timeout;
         private CircuitBreaker.Properties circuitBreaker;
+        private Query query;
+        private Cache cache;
+
+        @Data
+        public static class Query {
+            private int concurrency;
+            private double requestsPerSecond;
+        }
+
+        @Data
+        public static class Cache {
+            private Duration ttl;
+            private Map<String, Duration> pathTtls = Map.of();
+        }
     }
 
     @Bean
@@ -36,10 +51,15 @@ class BuderusConfiguration {
         var host = properties.host;
         var km200 = new KM200(host, timeout, properties.gatewayPassword, properties.privatePassword, properties.salt);
 
-        var circuitBreaker = new CircuitBreaker<Double>("KM200", properties.circuitBreaker, KM200Exception.class,
+        var engine = new KM200QueryEngine(km200, properties.query.concurrency, properties.query.requestsPerSecond);
+
+        var circuitBreaker = new CircuitBreaker<Object>("KM200", properties.circuitBreaker, KM200Exception.class,
                 IOException.class);
 
-        log.info("Configured KM200(host={}, timeout={}, circuit-breaker({}))", host, timeout, circuitBreaker);
-        return new Heater(km200, circuitBreaker);
+        var cache = new HeaterCache(properties.cache.ttl, properties.cache.pathTtls);
+
+        log.info("Configured KM200(host={}, timeout={}, query({}), cache({}), circuit-breaker({}))", host, timeout,
+                engine, cache, circuitBreaker);
+        return new Heater(engine, circuitBreaker, cache);
     }
 }
@@ -3,17 +3,34 @@ package de.malkusch.ha.shared.infrastructure.buderus;
 import java.io.IOException;
 
 import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
-import de.malkusch.km200.KM200;
 import de.malkusch.km200.KM200Exception;
 import lombok.RequiredArgsConstructor;
 
 @RequiredArgsConstructor
 public final class Heater {
 
-    private final KM200 km200;
-    private final CircuitBreaker<Double> breaker;
+    private final KM200QueryEngine engine;
+    private final CircuitBreaker<Object> breaker;
+    private final HeaterCache cache;
 
     public double query(String path) throws KM200Exception, IOException, InterruptedException {
-        return breaker.get(() -> km200.queryDouble(path));
+        return cache.get(path, () -> breaker.<KM200Exception, IOException, Double>get(
+                () -> engine.query(km200 -> km200.queryDouble(path))));
+    }
+
+    public String queryJson(String path) throws KM200Exception, IOException, InterruptedException {
+        return breaker.<KM200Exception, IOException, String>get(() -> engine.query(km200 -> km200.query(path)));
+    }
+
+    /**
+     * Queries without the circuit breaker, as exploring the tree hits many
+     * forbidden paths.
+     */
+    public String discover(String path) throws KM200Exception, IOException, InterruptedException {
+        return engine.query(km200 -> km200.query(path));
+    }
+
+    public CircuitBreaker<?> circuitBreaker() {
+        return breaker;
     }
 }
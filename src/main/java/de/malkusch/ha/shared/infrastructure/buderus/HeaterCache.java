@@ -0,0 +1,127 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import de.malkusch.km200.KM200Exception;
+import io.prometheus.client.Counter;
+
+/**
+ * Read-through cache for the heater's values.
+ *
+ * A value is served from the cache within its path's TTL. Concurrent readers of
+ * an expired path share one query. If that query's reader is interrupted, the
+ * others don't inherit the interruption but retry with a query of their own.
+ */
+final class HeaterCache {
+
+    private static final Counter REQUESTS = Counter.build() //
+            .name("km200_cache_requests") //
+            .help("Heater queries by cache result") //
+            .labelNames("result") //
+            .register();
+
+    private enum Result {
+        HIT, MISS, COALESCED;
+
+        void count() {
+            REQUESTS.labels(name().toLowerCase()).inc();
+        }
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        double load() throws KM200Exception, IOException, InterruptedException;
+    }
+
+    private record Entry(double value, long expires) {
+    }
+
+    private final Duration ttl;
+    private final Map<String, Duration> pathTtls;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Double>> loading = new ConcurrentHashMap<>();
+
+    HeaterCache(Duration ttl, Map<String, Duration> pathTtls) {
+        this.ttl = ttl;
+        this.pathTtls = Map.copyOf(pathTtls);
+    }
+
+    double get(String path, Loader loader) throws KM200Exception, IOException, InterruptedException {
+        while (true) {
+            var entry = entries.get(path);
+            if (entry != null && System.nanoTime() - entry.expires < 0) {
+                Result.HIT.count();
+                return entry.value;
+            }
+
+            var load = new CompletableFuture<Double>();
+            var running = loading.putIfAbsent(path, load);
+            if (running == null) {
+                return load(path, loader, load);
+            }
+            Result.COALESCED.count();
+            var value = await(running);
+            if (value.isPresent()) {
+                return value.getAsDouble();
+            }
+        }
+    }
+
+    private double load(String path, Loader loader, CompletableFuture<Double> load)
+            throws KM200Exception, IOException, InterruptedException {
+
+        Result.MISS.count();
+        try {
+            var value = loader.load();
+            entries.put(path, new Entry(value, System.nanoTime() + ttl(path).toNanos()));
+            load.complete(value);
+            return value;
+
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+            throw e;
+
+        } finally {
+            loading.remove(path, load);
+        }
+    }
+
+    private Duration ttl(String path) {
+        return pathTtls.getOrDefault(path, ttl);
+    }
+
+    /**
+     * @return empty if the loading reader was interrupted
+     */
+    private static OptionalDouble await(CompletableFuture<Double> load)
+            throws KM200Exception, IOException, InterruptedException {
+
+        try {
+            return OptionalDouble.of(load.get());
+
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+            case InterruptedException c -> {
+                return OptionalDouble.empty();
+            }
+            case KM200Exception c -> throw c;
+            case IOException c -> throw c;
+            case RuntimeException c -> throw c;
+            case Error c -> throw c;
+            default -> throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ttl=%s, path-ttls=%s", ttl, pathTtls);
+    }
+}
@@ -0,0 +1,93 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.malkusch.km200.KM200;
+import de.malkusch.km200.KM200Exception;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+/**
+ * Queries the KM200 concurrently without overloading the gateway.
+ *
+ * Requests are paced to {@code requestsPerSecond}, and at most
+ * {@code concurrency} requests are in flight at once.
+ */
+final class KM200QueryEngine {
+
+    private static final Gauge IN_FLIGHT = Gauge.build() //
+            .name("km200_queries_in_flight") //
+            .help("KM200 requests which are currently in flight") //
+            .register();
+
+    private static final Histogram WAIT = Histogram.build() //
+            .name("km200_query_wait_seconds") //
+            .help("Time a KM200 query waited for pacing and a free slot") //
+            .buckets(0.01, 0.1, 0.5, 1, 2.5, 5, 10, 30) //
+            .register();
+
+    @FunctionalInterface
+    interface Query<T> {
+        T query(KM200 km200) throws KM200Exception, IOException, InterruptedException;
+    }
+
+    private final KM200 km200;
+    private final int concurrency;
+    private final Semaphore slots;
+    private final long interval;
+    private final AtomicLong nextSlot = new AtomicLong(System.nanoTime());
+
+    KM200QueryEngine(KM200 km200, int concurrency, double requestsPerSecond) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive, was " + concurrency);
+        }
+        this.km200 = km200;
+        this.concurrency = concurrency;
+        this.slots = new Semaphore(concurrency, true);
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be positive, was " + requestsPerSecond);
+        }
+        this.interval = (long) (1e9 / requestsPerSecond);
+    }
+
+    <T> T query(Query<T> query) throws KM200Exception, IOException, InterruptedException {
+        var timer = WAIT.startTimer();
+        awaitPacing();
+        slots.acquire();
+        timer.observeDuration();
+        IN_FLIGHT.inc();
+        try {
+            return query.query(km200);
+
+        } finally {
+            IN_FLIGHT.dec();
+            slots.release();
+        }
+    }
+
+    /**
+     * Reserves the next free slot and sleeps interruptibly until then, so that
+     * the callers' deadlines can cancel a query which waits for pacing. An
+     * interrupted wait leaves its slot unused.
+     */
+    private void awaitPacing() throws InterruptedException {
+        var now = System.nanoTime();
+        var previous = nextSlot.getAndUpdate(next -> Math.max(next, now) + interval);
+        var wait = Math.max(previous, now) - now;
+        if (wait > 0) {
+            NANOSECONDS.sleep(wait);
+        } else if (Thread.interrupted()) {
+            throw new InterruptedException("Interrupted while waiting for KM200 pacing");
+        }
+    }
+
+    @Override
+    public String toString() {
+        var rate = interval == 0 ? Double.POSITIVE_INFINITY : 1e9 / interval;
+        return String.format("concurrency=%d, rate=%.2f/s", concurrency, rate);
+    }
+}
@@ -133,6 +133,10 @@ public final class CircuitBreaker<R> {
         return circuitBreaker.isHalfOpen();
     }
 
+    public String state() {
+        return circuitBreaker.getState().name().toLowerCase();
+    }
+
     private static final class RegisterErrorException extends RuntimeException {
     }
 
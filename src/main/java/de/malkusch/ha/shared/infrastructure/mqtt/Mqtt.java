@@ -1,13 +1,52 @@
 package de.malkusch.ha.shared.infrastructure.mqtt;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
 import java.io.IOException;
 
 public interface Mqtt extends AutoCloseable {
 
+    /**
+     * Consumes the raw payloads of a topic filter together with their topics,
+     * e.g. to distinguish the topics of a wildcard subscription.
+     */
+    @FunctionalInterface
+    public interface TopicConsumer {
+        void consume(String topic, byte[] message) throws Exception;
+
+        /**
+         * A consumer which needs every message opts out of coalescing.
+         */
+        default boolean isCoalescable() {
+            return true;
+        }
+    }
+
     @FunctionalInterface
-    public interface Consumer {
+    public interface Consumer extends TopicConsumer {
         void consume(String message) throws Exception;
+
+        /**
+         * Consumes the raw payload. Override this to avoid decoding it.
+         */
+        default void consume(byte[] message) throws Exception {
+            consume(new String(message, UTF_8));
+        }
+
+        @Override
+        default void consume(String topic, byte[] message) throws Exception {
+            consume(message);
+        }
+    }
+
+    default void subscribe(String topic, Consumer consumer) throws IOException {
+        subscribe(topic, (TopicConsumer) consumer);
     }
 
-    void subscribe(String topic, Consumer consumer) throws IOException;
+    /**
+     * @param topic
+     *            a topic filter, which may contain the wildcards {@code +} and
+     *            {@code #}
+     */
+    void subscribe(String topic, TopicConsumer consumer) throws IOException;
 }
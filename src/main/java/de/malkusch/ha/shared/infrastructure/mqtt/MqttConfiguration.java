@@ -3,6 +3,7 @@ package de.malkusch.ha.shared.infrastructure.mqtt;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
@@ -20,6 +21,7 @@ import lombok.extern.slf4j.Slf4j;
 public class MqttConfiguration {
 
     private final Properties properties;
+    private final ScheduledExecutorService scheduler;
 
     @Component
     @ConfigurationProperties("mqtt")
@@ -34,6 +36,8 @@ public class MqttConfiguration {
         Duration timeout;
         Duration keepAlive;
         Duration sessionExpiryInterval;
+        Duration minInterval;
+        int laneCapacity;
         CircuitBreaker.Properties circuitBreaker;
     }
 
@@ -44,7 +48,8 @@ public class MqttConfiguration {
             return new NullMqtt();
         }
         var paho5 = new PahoMqtt5(clientId(), properties.host, properties.port, properties.user, properties.password,
-                properties.timeout, properties.keepAlive, properties.sessionExpiryInterval);
+                properties.timeout, properties.keepAlive, properties.sessionExpiryInterval, properties.minInterval,
+                properties.laneCapacity, scheduler);
         return new ResilientMqtt(paho5, properties.circuitBreaker, properties.keepAlive);
     }
 
@@ -0,0 +1,213 @@
+package de.malkusch.ha.shared.infrastructure.mqtt;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import de.malkusch.ha.shared.infrastructure.mqtt.Mqtt.TopicConsumer;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves the consumers off MQTT's network thread.
+ *
+ * Each topic has its own lane, which delivers its messages in arrival order on
+ * a virtual thread. Lanes don't block each other, so a slow consumer only
+ * delays its own topic. A lane holds at most {@code capacity} messages; beyond
+ * that the oldest waiting message is dropped. An idle lane is removed, so that
+ * short-lived topics don't accumulate.
+ *
+ * With a {@code minInterval} a lane delivers at most one message per
+ * subscription within that interval. Messages arriving in between are
+ * coalesced, only the newest one is delivered. A consumer which isn't
+ * {@link TopicConsumer#isCoalescable()} still gets every message, just batched
+ * within the interval.
+ */
+@Slf4j
+final class MqttDispatcher implements AutoCloseable {
+
+    private static final Gauge QUEUE_DEPTH = Gauge.build() //
+            .name("mqtt_dispatch_queue_depth") //
+            .help("MQTT messages waiting for their consumer") //
+            .labelNames("subscription") //
+            .register();
+
+    private static final Counter COALESCED = Counter.build() //
+            .name("mqtt_coalesced_messages") //
+            .help("MQTT messages which were superseded by a newer one before consumption") //
+            .labelNames("subscription") //
+            .register();
+
+    private static final Counter DROPPED = Counter.build() //
+            .name("mqtt_dropped_messages") //
+            .help("MQTT messages which were dropped, because their lane was full") //
+            .labelNames("subscription") //
+            .register();
+
+    private static final Histogram LATENCY = Histogram.build() //
+            .name("mqtt_dispatch_latency_seconds") //
+            .help("Time between a MQTT message's arrival and its consumption") //
+            .labelNames("subscription") //
+            .buckets(0.001, 0.01, 0.1, 0.5, 1, 5, 30) //
+            .register();
+
+    private record Delivery(String subscription, TopicConsumer consumer, byte[] payload, long arrived) {
+    }
+
+    private final ExecutorService executor = Executors
+            .newThreadPerTaskExecutor(Thread.ofVirtual().name("mqtt-dispatch-", 0).factory());
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final long minInterval;
+    private final int capacity;
+
+    MqttDispatcher(Duration minInterval, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.minInterval = minInterval.toNanos();
+        this.capacity = capacity;
+    }
+
+    void dispatch(String subscription, String topic, TopicConsumer consumer, byte[] payload) {
+        QUEUE_DEPTH.labels(subscription).inc();
+        var delivery = new Delivery(subscription, consumer, payload, System.nanoTime());
+        // Adding within compute() can't race with the removal of an idle lane
+        var lane = lanes.compute(topic, (it, existing) -> {
+            var added = existing == null ? new Lane(it) : existing;
+            added.add(delivery);
+            return added;
+        });
+        lane.schedule();
+    }
+
+    int lanes() {
+        return lanes.size();
+    }
+
+    private final class Lane implements Runnable {
+
+        private final String topic;
+        private final Queue<Delivery> queue = new LinkedBlockingQueue<>(capacity);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private long next = System.nanoTime();
+
+        Lane(String topic) {
+            this.topic = topic;
+        }
+
+        void add(Delivery delivery) {
+            while (!queue.offer(delivery)) {
+                var dropped = queue.poll();
+                if (dropped != null) {
+                    QUEUE_DEPTH.labels(dropped.subscription).dec();
+                    DROPPED.labels(dropped.subscription).inc();
+                    log.debug("Dropping oldest message of {}: Lane is full", topic);
+                }
+            }
+        }
+
+        private void schedule() {
+            if (!scheduled.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                executor.execute(this);
+
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+                log.debug("Dropping messages of {}: Dispatcher is closed", topic);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (minInterval == 0) {
+                    Delivery delivery;
+                    while ((delivery = queue.poll()) != null) {
+                        deliver(delivery);
+                    }
+                } else {
+                    while (!queue.isEmpty()) {
+                        awaitInterval();
+                        deliverNewest();
+                    }
+                    // The lane keeps its interval until it is removed
+                    awaitInterval();
+                }
+
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            scheduled.set(false);
+            lanes.computeIfPresent(topic, (it, lane) -> lane == this && queue.isEmpty() ? null : lane);
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void awaitInterval() throws InterruptedException {
+            var wait = next - System.nanoTime();
+            if (wait > 0) {
+                NANOSECONDS.sleep(wait);
+            }
+        }
+
+        private void deliverNewest() {
+            var deliveries = new ArrayList<Delivery>();
+            var newest = new HashMap<String, Integer>();
+            Delivery delivery;
+            while ((delivery = queue.poll()) != null) {
+                if (!delivery.consumer.isCoalescable()) {
+                    deliveries.add(delivery);
+                    continue;
+                }
+                var superseded = newest.get(delivery.subscription);
+                if (superseded == null) {
+                    newest.put(delivery.subscription, deliveries.size());
+                    deliveries.add(delivery);
+                } else {
+                    QUEUE_DEPTH.labels(delivery.subscription).dec();
+                    COALESCED.labels(delivery.subscription).inc();
+                    deliveries.set(superseded, delivery);
+                }
+            }
+            next = System.nanoTime() + minInterval;
+            deliveries.forEach(this::deliver);
+        }
+
+        private void deliver(Delivery delivery) {
+            QUEUE_DEPTH.labels(delivery.subscription).dec();
+            LATENCY.labels(delivery.subscription).observe((System.nanoTime() - delivery.arrived) / 1e9);
+            try {
+                delivery.consumer.consume(topic, delivery.payload);
+
+            } catch (Exception e) {
+                log.warn("Failed consuming message from {}", topic, e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            log.warn("Interrupting MQTT consumers");
+            executor.shutdownNow();
+        }
+    }
+}
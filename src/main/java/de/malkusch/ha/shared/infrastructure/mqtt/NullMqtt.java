@@ -9,6 +9,6 @@ final class NullMqtt implements Mqtt {
     }
 
     @Override
-    public void subscribe(String topic, Consumer consumer) throws IOException {
+    public void subscribe(String topic, TopicConsumer consumer) throws IOException {
     }
 }
@@ -4,11 +4,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 import java.io.IOException;
 import java.time.Duration;
-import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.eclipse.paho.mqttv5.client.IMqttMessageListener;
 import org.eclipse.paho.mqttv5.client.IMqttToken;
 import org.eclipse.paho.mqttv5.client.MqttCallback;
 import org.eclipse.paho.mqttv5.client.MqttClient;
@@ -22,7 +20,6 @@ import org.eclipse.paho.mqttv5.common.MqttSubscription;
 import org.eclipse.paho.mqttv5.common.packet.MqttProperties;
 
 import de.malkusch.ha.shared.infrastructure.mqtt.ResilientMqtt.ReconnectableMqtt;
-import de.malkusch.ha.shared.infrastructure.scheduler.Schedulers;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
@@ -31,24 +28,18 @@ final class PahoMqtt5 implements ReconnectableMqtt {
     private final MqttClient mqtt;
     private final String host;
     private final MqttConnectionOptions options;
-    private final ScheduledExecutorService executorService;
+    private final MqttDispatcher dispatcher;
+    private final TopicRouter router = new TopicRouter();
 
     public PahoMqtt5(String clientId, String host, int port, String user, String password, Duration timeout,
-            Duration keepAlive, Duration sessionExpiryInterval) throws MqttException {
+            Duration keepAlive, Duration sessionExpiryInterval, Duration minInterval, int laneCapacity,
+            ScheduledExecutorService scheduler) throws MqttException {
 
         this.host = host;
+        this.dispatcher = new MqttDispatcher(minInterval, laneCapacity);
         var uri = String.format("ssl://%s:%s", host, port);
 
-        executorService = Executors.newScheduledThreadPool(10, r -> {
-            var thread = new Thread(r, "mqtt");
-            thread.setUncaughtExceptionHandler((t, e) -> {
-                log.error("Shutting down due to an error in mqtt", e);
-            });
-            thread.setDaemon(true);
-            return thread;
-        });
-
-        mqtt = new MqttClient(uri, clientId, new MemoryPersistence(), executorService);
+        mqtt = new MqttClient(uri, clientId, new MemoryPersistence(), scheduler);
         mqtt.setCallback(new MqttEventHandler());
 
         options = new MqttConnectionOptionsBuilder() //
@@ -63,23 +54,26 @@ final class PahoMqtt5 implements ReconnectableMqtt {
                 .username(user) //
                 .build();
 
-        log.info("MQTT configured with sessionExpiry={}s, connectionTimeout={}s, keepAliveInterval={}s", //
+        log.info("MQTT configured with sessionExpiry={}s, connectionTimeout={}s, keepAliveInterval={}s, minInterval={}", //
                 options.getSessionExpiryInterval(), //
                 options.getConnectionTimeout(), //
-                options.getKeepAliveInterval());
+                options.getKeepAliveInterval(), //
+                minInterval);
     }
 
     private static final int QOS_LOWEST = 0;
 
     @Override
-    public synchronized void subscribe(String topic, Consumer consumer) throws IOException {
+    public synchronized void subscribe(String topic, TopicConsumer consumer) throws IOException {
+        checkConnection();
+        // The route must exist before the subscription, as retained messages arrive right away
+        router.put(topic, consumer);
         try {
-            checkConnection();
             MqttSubscription[] subscriptions = { new MqttSubscription(topic, QOS_LOWEST) };
-            IMqttMessageListener[] listener = { (t, msg) -> consumer.consume(new String(msg.getPayload())) };
-            mqtt.subscribe(subscriptions, listener);
+            mqtt.subscribe(subscriptions);
 
-        } catch (MqttException e) {
+        } catch (MqttException | RuntimeException e) {
+            router.remove(topic, consumer);
             throw new IOException("Couldn't subscribe to " + topic, e);
         }
     }
@@ -151,6 +145,13 @@ final class PahoMqtt5 implements ReconnectableMqtt {
 
         @Override
         public void messageArrived(String topic, MqttMessage message) throws Exception {
+            var routes = router.route(topic);
+            if (routes.isEmpty()) {
+                log.debug("Ignoring message of unsubscribed topic {}", topic);
+            }
+            for (var route : routes) {
+                dispatcher.dispatch(route.filter(), topic, route.consumer(), message.getPayload());
+            }
         }
 
         @Override
@@ -170,16 +171,11 @@ final class PahoMqtt5 implements ReconnectableMqtt {
 
     @Override
     public void close() throws Exception {
-        try {
+        try (dispatcher) {
             disconnect();
 
         } finally {
-            try {
-                mqtt.close(true);
-
-            } finally {
-                Schedulers.close(executorService);
-            }
+            mqtt.close(true);
         }
     }
 
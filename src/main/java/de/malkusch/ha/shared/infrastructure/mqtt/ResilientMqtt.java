@@ -14,6 +14,7 @@ import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 
 import static de.malkusch.ha.shared.infrastructure.DateUtil.formatTime;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreakerExceptionHandler.withCircuitBreakerLogging;
 
 @Slf4j
@@ -22,30 +23,35 @@ class ResilientMqtt implements Mqtt, AutoCloseable {
     private final ReconnectableMqtt mqtt;
     private volatile Instant lastMessage = Instant.now();
 
-    private class ResilientConsumer implements Consumer {
+    private class ResilientConsumer implements TopicConsumer {
 
         private final CircuitBreaker<Void> circuitBreaker;
-        private final Consumer consumer;
+        private final TopicConsumer consumer;
         private final String topic;
 
-        public ResilientConsumer(String topic, Consumer consumer) {
+        public ResilientConsumer(String topic, TopicConsumer consumer) {
             circuitBreaker = new CircuitBreaker<Void>(topic, subscribeCircuitBreaker, Throwable.class);
             this.consumer = consumer;
             this.topic = topic;
         }
 
         @Override
-        public void consume(String message) throws Exception {
+        public void consume(String messageTopic, byte[] message) throws Exception {
             lastMessage = Instant.now();
-            log.debug("Received message for {}", topic);
+            log.debug("Received message for {}", messageTopic);
             try {
-                withCircuitBreakerLogging(() -> circuitBreaker.run(() -> consumer.consume(message)));
+                withCircuitBreakerLogging(() -> circuitBreaker.run(() -> consumer.consume(messageTopic, message)));
 
             } catch (Throwable e) {
-                log.warn("Failed consuming message from {}: {}", topic, message, e);
+                log.warn("Failed consuming message from {}: {}", messageTopic, new String(message, UTF_8), e);
             }
         }
 
+        @Override
+        public boolean isCoalescable() {
+            return consumer.isCoalescable();
+        }
+
         @Override
         public String toString() {
             return topic;
@@ -78,7 +84,7 @@ class ResilientMqtt implements Mqtt, AutoCloseable {
     }
 
     @Override
-    public void subscribe(String topic, Consumer consumer) {
+    public void subscribe(String topic, TopicConsumer consumer) {
         var resilientConsumer = new ResilientConsumer(topic, consumer);
         subscriptions.add(resilientConsumer);
 
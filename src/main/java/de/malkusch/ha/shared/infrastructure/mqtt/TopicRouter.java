@@ -0,0 +1,94 @@
+package de.malkusch.ha.shared.infrastructure.mqtt;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.malkusch.ha.shared.infrastructure.mqtt.Mqtt.TopicConsumer;
+
+/**
+ * Finds the consumers of a topic in a trie of topic filters.
+ *
+ * The cost of routing depends on the topic's depth, not on the number of
+ * subscriptions. Filters may contain the wildcards {@code +} and {@code #},
+ * which don't match topics starting with {@code $}. A filter has at most one
+ * consumer, subscribing it again replaces the consumer.
+ */
+final class TopicRouter {
+
+    record Route(String filter, TopicConsumer consumer) {
+    }
+
+    private static final class Node {
+        private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<>();
+        private volatile Route route;
+    }
+
+    private final Node root = new Node();
+
+    void put(String filter, TopicConsumer consumer) {
+        var levels = filter.split("/", -1);
+        var node = root;
+        for (int i = 0; i < levels.length; i++) {
+            var level = levels[i];
+            if (level.equals("#") && i != levels.length - 1) {
+                throw new IllegalArgumentException("# must be the last level of " + filter);
+            }
+            if (level.length() > 1 && (level.contains("#") || level.contains("+"))) {
+                throw new IllegalArgumentException("Wildcards must occupy a whole level of " + filter);
+            }
+            node = node.children.computeIfAbsent(level, it -> new Node());
+        }
+        node.route = new Route(filter, consumer);
+    }
+
+    /**
+     * Removes the filter's route, if it still has the consumer.
+     */
+    void remove(String filter, TopicConsumer consumer) {
+        var node = root;
+        for (var level : filter.split("/", -1)) {
+            node = node.children.get(level);
+            if (node == null) {
+                return;
+            }
+        }
+        var route = node.route;
+        if (route != null && route.consumer() == consumer) {
+            node.route = null;
+        }
+    }
+
+    List<Route> route(String topic) {
+        var routes = new ArrayList<Route>(1);
+        match(root, topic.split("/", -1), 0, !topic.startsWith("$"), routes);
+        return routes;
+    }
+
+    private static void match(Node node, String[] levels, int level, boolean wildcards, List<Route> routes) {
+        if (wildcards) {
+            var multiLevel = node.children.get("#");
+            if (multiLevel != null && multiLevel.route != null) {
+                routes.add(multiLevel.route);
+            }
+        }
+        if (level == levels.length) {
+            var route = node.route;
+            if (route != null) {
+                routes.add(route);
+            }
+            return;
+        }
+        var exact = node.children.get(levels[level]);
+        if (exact != null) {
+            match(exact, levels, level + 1, true, routes);
+        }
+        if (wildcards) {
+            var singleLevel = node.children.get("+");
+            if (singleLevel != null) {
+                match(singleLevel, levels, level + 1, true, routes);
+            }
+        }
+    }
+}
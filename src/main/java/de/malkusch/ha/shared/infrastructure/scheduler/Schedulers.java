@@ -1,17 +1,16 @@
 package de.malkusch.ha.shared.infrastructure.scheduler;
 
 import static java.lang.System.exit;
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ExecutorService;
 
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 public final class Schedulers {
 
-    public static void close(ScheduledExecutorService scheduler) throws InterruptedException  {
+    public static void close(ExecutorService scheduler) throws InterruptedException  {
         scheduler.shutdown();
         if (scheduler.awaitTermination(10, SECONDS)) {
             return;
@@ -22,15 +21,4 @@ public final class Schedulers {
             log.error("Forced shutdown failed");
         }
     }
-    
-    public static ScheduledExecutorService singleThreadScheduler(String name) {
-        return newSingleThreadScheduledExecutor(r -> {
-            var thread = new Thread(r, name);
-            thread.setUncaughtExceptionHandler((t, e) -> {
-                log.error("Uncaught exception in {} ", name, e);
-            });
-            thread.setDaemon(true);
-            return thread;
-        });
-    }
 }
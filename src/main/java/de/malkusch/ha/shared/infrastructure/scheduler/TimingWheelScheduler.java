@@ -0,0 +1,343 @@
+package de.malkusch.ha.shared.infrastructure.scheduler;
+
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.Thread.currentThread;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A {@link ScheduledExecutorService} based on a hashed timing wheel.
+ *
+ * One ticker thread advances the wheel every tick and hands expired tasks to a
+ * new virtual thread each. The number of platform threads therefore stays at
+ * one, no matter how many tasks are scheduled. A task fires at most one tick
+ * late, which is reported as lag.
+ *
+ * Periodic tasks never overlap themselves: the next run is scheduled after the
+ * current one finished. On shutdown all pending tasks are cancelled, running
+ * tasks may complete.
+ */
+@Slf4j
+public final class TimingWheelScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private static final Histogram LAG = Histogram.build() //
+            .name("scheduler_lag_seconds") //
+            .help("Delay between a task's scheduled time and its dispatch") //
+            .labelNames("scheduler") //
+            .buckets(0.001, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 5) //
+            .register();
+
+    private static final Gauge PENDING = Gauge.build() //
+            .name("scheduler_pending_tasks") //
+            .help("Tasks waiting in the timing wheel") //
+            .labelNames("scheduler") //
+            .register();
+
+    private static final Gauge RUNNING = Gauge.build() //
+            .name("scheduler_running_tasks") //
+            .help("Tasks currently running on a virtual thread") //
+            .labelNames("scheduler") //
+            .register();
+
+    private final String name;
+    private final long tickNanos;
+    private final List<Timeout<?>>[] wheel;
+    private final int mask;
+    private final Queue<Timeout<?>> added = new ConcurrentLinkedQueue<>();
+    private final Set<Thread> running = ConcurrentHashMap.newKeySet();
+    private final ThreadFactory workers;
+    private final Thread ticker;
+    private final long startTime;
+    private long tick;
+    private volatile boolean shutdown;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheelScheduler(String name, Duration tick, int wheelSize) {
+        if (tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("Tick must be positive, but was " + tick);
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two, but was " + wheelSize);
+        }
+
+        this.name = name;
+        this.tickNanos = tick.toNanos();
+        this.wheel = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.mask = wheelSize - 1;
+        this.workers = Thread.ofVirtual() //
+                .name(name + "-", 0) //
+                .uncaughtExceptionHandler((t, e) -> log.error("Uncaught exception in {}", t, e)) //
+                .factory();
+
+        startTime = System.nanoTime();
+        ticker = new Thread(this::runTicker, name + "-ticker");
+        ticker.setDaemon(true);
+        ticker.setUncaughtExceptionHandler((t, e) -> log.error("Uncaught exception in {}", t, e));
+        ticker.start();
+
+        log.info("Started scheduler {} with tick {} and wheel size {}", name, tick, wheelSize);
+    }
+
+    private final class Timeout<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+
+        private final long period;
+        private volatile long time;
+        private long remainingRounds;
+
+        Timeout(Callable<V> callable, long time) {
+            super(callable);
+            this.time = time;
+            this.period = 0;
+        }
+
+        Timeout(Runnable runnable, long time, long period) {
+            super(runnable, null);
+            this.time = time;
+            this.period = period;
+        }
+
+        @Override
+        public boolean isPeriodic() {
+            return period != 0;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.nanoTime(), NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(NANOSECONDS), other.getDelay(NANOSECONDS));
+        }
+
+        @Override
+        public void run() {
+            if (!isPeriodic()) {
+                super.run();
+
+            } else if (runAndReset()) {
+                time = period > 0 ? time + period : System.nanoTime() - period;
+                if (shutdown) {
+                    cancel(false);
+                } else {
+                    enqueue(this);
+                }
+            }
+        }
+    }
+
+    private void enqueue(Timeout<?> timeout) {
+        PENDING.labels(name).inc();
+        added.add(timeout);
+    }
+
+    private <V> Timeout<V> schedule(Timeout<V> timeout) {
+        if (shutdown) {
+            throw new RejectedExecutionException(name + " is shut down");
+        }
+        enqueue(timeout);
+        return timeout;
+    }
+
+    private long triggerTime(long delay, TimeUnit unit) {
+        return System.nanoTime() + unit.toNanos(Math.max(0, delay));
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return schedule(new Timeout<>(command, triggerTime(delay, unit), 0));
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return schedule(new Timeout<>(callable, triggerTime(delay, unit)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive, but was " + period);
+        }
+        return schedule(new Timeout<>(command, triggerTime(initialDelay, unit), unit.toNanos(period)));
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("Delay must be positive, but was " + delay);
+        }
+        return schedule(new Timeout<>(command, triggerTime(initialDelay, unit), -unit.toNanos(delay)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException(name + " is shut down");
+        }
+        dispatch(command);
+    }
+
+    private void dispatch(Runnable task) {
+        var thread = workers.newThread(() -> {
+            try {
+                task.run();
+
+            } finally {
+                running.remove(currentThread());
+                RUNNING.labels(name).dec();
+            }
+        });
+        RUNNING.labels(name).inc();
+        running.add(thread);
+        thread.start();
+    }
+
+    private void runTicker() {
+        while (!shutdown) {
+            waitForNextTick();
+            if (shutdown) {
+                break;
+            }
+            transferAdded();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+        cancelPending();
+    }
+
+    private void waitForNextTick() {
+        var deadline = startTime + (tick + 1) * tickNanos;
+        long remaining;
+        while (!shutdown && (remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(this, remaining);
+        }
+    }
+
+    private void transferAdded() {
+        Timeout<?> timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.isCancelled()) {
+                PENDING.labels(name).dec();
+                continue;
+            }
+            var calculated = (timeout.time - startTime) / tickNanos;
+            timeout.remainingRounds = (calculated - tick) / wheel.length;
+            var ticks = Math.max(calculated, tick);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout<?>> bucket) {
+        var now = System.nanoTime();
+        for (int i = bucket.size() - 1; i >= 0; i--) {
+            var timeout = bucket.get(i);
+            if (timeout.isCancelled()) {
+                remove(bucket, i);
+
+            } else if (timeout.remainingRounds <= 0) {
+                remove(bucket, i);
+                LAG.labels(name).observe(Math.max(0, now - timeout.time) / 1e9);
+                dispatch(timeout);
+
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    private void remove(List<Timeout<?>> bucket, int i) {
+        var last = bucket.removeLast();
+        if (i < bucket.size()) {
+            bucket.set(i, last);
+        }
+        PENDING.labels(name).dec();
+    }
+
+    private void cancelPending() {
+        for (var bucket : wheel) {
+            bucket.forEach(it -> it.cancel(false));
+            bucket.clear();
+        }
+        added.forEach(it -> it.cancel(false));
+        added.clear();
+        PENDING.labels(name).set(0);
+    }
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        LockSupport.unpark(ticker);
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        running.forEach(Thread::interrupt);
+        return List.of();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && !ticker.isAlive() && running.isEmpty();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var deadline = System.nanoTime() + unit.toNanos(timeout);
+        ticker.join(Duration.ofNanos(Math.max(1, deadline - System.nanoTime())));
+        for (var thread : running) {
+            var remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            thread.join(Duration.ofNanos(remaining));
+        }
+        return isTerminated();
+    }
+
+    @Override
+    public void close() {
+        try {
+            Schedulers.close(this);
+
+        } catch (InterruptedException e) {
+            currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
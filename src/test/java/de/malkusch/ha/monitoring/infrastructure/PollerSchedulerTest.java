@@ -0,0 +1,149 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import de.malkusch.ha.monitoring.infrastructure.ScheduledPoller.SingleFlight;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PollerSchedulerTest {
+
+    private static final long RATE = Duration.ofSeconds(60).toNanos();
+
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final RecordingScheduler scheduler = new RecordingScheduler();
+    private final PollerRegistry registry = new PollerRegistry();
+    private final List<String> updated = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void shouldSpreadPollersByNameIndependentOfRegistrationOrder() {
+        var pollers = new PollerScheduler(scheduler, Duration.ofNanos(RATE), Duration.ZERO, now::get);
+        for (var name : List.of("c", "a", "d", "b")) {
+            pollers.register(poller(name));
+        }
+
+        pollers.start();
+
+        assertEquals(List.of(0L, RATE / 4, RATE / 2, RATE * 3 / 4), scheduler.delays());
+        List.copyOf(scheduler.cycles).forEach(it -> it.command.run());
+        assertEquals(List.of("a", "b", "c", "d"), updated);
+    }
+
+    @Test
+    void shouldAddJitterWithinBounds() {
+        var jitter = Duration.ofSeconds(5).toNanos();
+        var pollers = new PollerScheduler(scheduler, Duration.ofNanos(RATE), Duration.ofNanos(jitter), now::get);
+        pollers.register(poller("a"));
+        pollers.start();
+
+        for (int i = 1; i <= 100; i++) {
+            var delay = scheduler.last().delay;
+            assertTrue(delay >= 0 && delay < jitter, "Jitter out of bounds: " + delay);
+
+            now.set(1_000 + i * RATE);
+            scheduler.last().command.run();
+        }
+    }
+
+    @Test
+    void shouldRejectJitterBeyondRate() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PollerScheduler(scheduler, Duration.ofSeconds(1), Duration.ofSeconds(1), now::get));
+    }
+
+    @Test
+    void lateCycleShouldCatchUpWithItsSlot() {
+        var pollers = new PollerScheduler(scheduler, Duration.ofNanos(RATE), Duration.ZERO, now::get);
+        pollers.register(poller("a"));
+        pollers.start();
+
+        now.addAndGet(RATE * 3 / 4);
+        scheduler.last().command.run();
+
+        assertEquals(RATE / 4, scheduler.last().delay);
+        assertEquals(List.of("a"), updated);
+    }
+
+    @Test
+    void closeShouldCancelPendingCycles() {
+        var pollers = new PollerScheduler(scheduler, Duration.ofNanos(RATE), Duration.ZERO, now::get);
+        pollers.register(poller("a"));
+        pollers.start();
+
+        pollers.close();
+
+        assertTrue(scheduler.last().future.isCancelled());
+    }
+
+    private ScheduledPoller poller(String name) {
+        Poller poller = new Poller() {
+
+            @Override
+            public void update() {
+                updated.add(name);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+        return new ScheduledPoller(poller, task -> {
+            try {
+                task.run();
+
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return true;
+        }, SingleFlight.DISABLED, registry);
+    }
+
+    /**
+     * Records the cycles instead of running them.
+     */
+    private static final class RecordingScheduler extends ScheduledThreadPoolExecutor {
+
+        private record Cycle(Runnable command, long delay, ScheduledFuture<?> future) {
+        }
+
+        private final List<Cycle> cycles = new CopyOnWriteArrayList<>();
+
+        RecordingScheduler() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            var future = super.schedule(() -> {
+            }, 1, DAYS);
+            cycles.add(new Cycle(command, unit.toNanos(delay), future));
+            return future;
+        }
+
+        List<Long> delays() {
+            return cycles.stream().map(Cycle::delay).toList();
+        }
+
+        Cycle last() {
+            return cycles.getLast();
+        }
+    }
+}
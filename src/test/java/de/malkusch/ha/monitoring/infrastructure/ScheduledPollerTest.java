@@ -0,0 +1,130 @@
+package de.malkusch.ha.monitoring.infrastructure;
+
+import de.malkusch.ha.monitoring.infrastructure.ScheduledPoller.SingleFlight;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import de.malkusch.ha.shared.infrastructure.async.AsyncExecutor;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ScheduledPollerTest {
+
+    private final List<Exception> errors = new CopyOnWriteArrayList<>();
+    private final Semaphore done = new Semaphore(0);
+    private final AsyncExecutor executor = task -> {
+        Thread.ofVirtual().start(() -> {
+            try {
+                task.run();
+
+            } catch (Exception e) {
+                errors.add(e);
+
+            } finally {
+                done.release();
+            }
+        });
+        return true;
+    };
+
+    @Test
+    void shouldSkipCyclesWhileUpdating() throws Exception {
+        var poller = new BlockingPoller("test_skip");
+        var scheduled = new ScheduledPoller(poller, executor, SingleFlight.SKIP, new PollerRegistry());
+
+        scheduled.updateAsync();
+        assertTrue(poller.started.tryAcquire(5, SECONDS));
+        scheduled.updateAsync();
+        scheduled.updateAsync();
+        scheduled.updateAsync();
+        poller.release.release();
+
+        assertTrue(done.tryAcquire(5, SECONDS));
+        assertEquals(1, poller.calls.get());
+        assertEquals(3, skipped(poller));
+    }
+
+    @Test
+    void shouldRerunOnceForCoalescedCycles() throws Exception {
+        var poller = new BlockingPoller("test_coalesce");
+        var scheduled = new ScheduledPoller(poller, executor, SingleFlight.COALESCE, new PollerRegistry());
+
+        scheduled.updateAsync();
+        assertTrue(poller.started.tryAcquire(5, SECONDS));
+        scheduled.updateAsync();
+        scheduled.updateAsync();
+        scheduled.updateAsync();
+        poller.release.release(2);
+
+        assertTrue(done.tryAcquire(5, SECONDS));
+        assertEquals(2, poller.calls.get());
+        assertEquals(2, skipped(poller));
+    }
+
+    @Test
+    void failedUpdateShouldDropCoalescedCycle() throws Exception {
+        var poller = new BlockingPoller("test_coalesce_failure");
+        var scheduled = new ScheduledPoller(poller, executor, SingleFlight.COALESCE, new PollerRegistry());
+        poller.failure = new IOException("test");
+
+        scheduled.updateAsync();
+        assertTrue(poller.started.tryAcquire(5, SECONDS));
+        scheduled.updateAsync();
+        poller.release.release();
+        assertTrue(done.tryAcquire(5, SECONDS));
+
+        assertEquals(1, poller.calls.get());
+        assertEquals(1, errors.size());
+        assertEquals("test", errors.get(0).getMessage());
+
+        scheduled.updateAsync();
+        assertTrue(poller.started.tryAcquire(5, SECONDS));
+        poller.release.release(2);
+        assertTrue(done.tryAcquire(5, SECONDS));
+        assertEquals(2, poller.calls.get());
+    }
+
+    private static double skipped(Poller poller) {
+        var value = CollectorRegistry.defaultRegistry.getSampleValue("poller_skipped_cycles_total",
+                new String[] { "poller" }, new String[] { poller.toString() });
+        return value == null ? 0 : value;
+    }
+
+    private static final class BlockingPoller implements Poller {
+
+        private final String name;
+        private final Semaphore started = new Semaphore(0);
+        private final Semaphore release = new Semaphore(0);
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile IOException failure;
+
+        BlockingPoller(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void update() throws IOException, InterruptedException {
+            calls.incrementAndGet();
+            started.release();
+            release.acquire();
+            var failure = this.failure;
+            if (failure != null) {
+                this.failure = null;
+                throw failure;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package de.malkusch.ha.monitoring.infrastructure.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TrackedGaugeTest {
+
+    private static final Duration STALE_AFTER = Duration.ofMillis(50);
+
+    @Test
+    void shouldNotExposeValueBeforeFirstUpdate() {
+        var gauge = TrackedGauge.build().name("test_initial").staleAfter(STALE_AFTER).create();
+
+        assertEquals(0, samples(gauge));
+    }
+
+    @Test
+    void shouldHideStaleValueUntilNextUpdate() throws Exception {
+        var gauge = TrackedGauge.build().name("test_stale").staleAfter(STALE_AFTER).create();
+        gauge.set(1);
+        assertEquals(1, samples(gauge));
+
+        Thread.sleep(STALE_AFTER.toMillis() * 2);
+        assertEquals(0, samples(gauge));
+
+        gauge.set(2);
+        assertEquals(1, samples(gauge));
+    }
+
+    @Test
+    void shouldEvictStaleChildren() throws Exception {
+        var gauge = TrackedGauge.build().name("test_children").labelNames("child").staleAfter(STALE_AFTER).create();
+        gauge.labels("old").set(1);
+        Thread.sleep(STALE_AFTER.toMillis() * 2);
+        gauge.labels("new").set(1);
+
+        var samples = gauge.collect().get(0).samples;
+
+        assertEquals(1, samples.size());
+        assertEquals("new", samples.get(0).labelValues.get(0));
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUpdatedChildBeyondCap() {
+        var gauge = TrackedGauge.build().name("test_capped").labelNames("child").maxChildren(2).create();
+        gauge.labels("a").set(1);
+        gauge.labels("b").set(1);
+        gauge.labels("a").set(2);
+
+        gauge.labels("c").set(1);
+
+        var children = gauge.collect().get(0).samples.stream().map(it -> it.labelValues.get(0)).sorted().toList();
+        assertEquals(List.of("a", "c"), children);
+    }
+
+    @Test
+    void shouldNotEvictChildBeforeItsFirstUpdate() {
+        var gauge = TrackedGauge.build().name("test_capped_new").labelNames("child").maxChildren(1).create();
+        var a = gauge.labels("a");
+        gauge.labels("b").set(1);
+        a.set(1);
+
+        var children = gauge.collect().get(0).samples.stream().map(it -> it.labelValues.get(0)).sorted().toList();
+        assertEquals(List.of("a", "b"), children);
+
+        gauge.labels("c").set(1);
+        assertEquals(1, samples(gauge));
+    }
+
+    @Test
+    void shouldNeverExpireWithoutStaleness() throws Exception {
+        var gauge = TrackedGauge.build().name("test_forever").create();
+        gauge.set(1);
+
+        Thread.sleep(STALE_AFTER.toMillis() * 2);
+
+        assertEquals(1, samples(gauge));
+    }
+
+    @Test
+    void shouldKeepAgeOfRestoredValue() {
+        var fresh = TrackedGauge.build().name("test_restored_fresh").staleAfter(Duration.ofMinutes(1)).create();
+        var updatedAt = Instant.ofEpochMilli(System.currentTimeMillis()).minusSeconds(10);
+        fresh.restore(1, updatedAt);
+        assertEquals(1, samples(fresh));
+        assertEquals(Optional.of(updatedAt), fresh.lastUpdate());
+
+        var stale = TrackedGauge.build().name("test_restored_stale").staleAfter(Duration.ofMinutes(1)).create();
+        stale.restore(1, Instant.now().minusSeconds(120));
+        assertEquals(0, samples(stale));
+    }
+
+    private static int samples(TrackedGauge gauge) {
+        return gauge.collect().get(0).samples.size();
+    }
+}
@@ -0,0 +1,94 @@
+package de.malkusch.ha.monitoring.infrastructure.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toMap;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class WindowedAggregateTest {
+
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+
+    @Test
+    void shouldAggregateBetweenScrapes() {
+        var aggregate = WindowedAggregate.build().name("test_pm25").window(Duration.ZERO).create();
+        aggregate.record(3);
+        aggregate.record(42);
+        aggregate.record(Double.NaN);
+        aggregate.record(5);
+
+        var samples = samples(aggregate);
+
+        assertEquals(3.0, (double) samples.get("test_pm25_window_count"));
+        assertEquals(50.0, (double) samples.get("test_pm25_window_sum"));
+        assertEquals(3.0, (double) samples.get("test_pm25_window_min"));
+        assertEquals(42.0, (double) samples.get("test_pm25_window_max"));
+        assertEquals(5.0, (double) samples.get("test_pm25_window_last"));
+    }
+
+    @Test
+    void shouldResetWithEachScrape() {
+        var aggregate = WindowedAggregate.build().name("test_pm25").window(Duration.ZERO).create();
+        aggregate.record(3);
+        samples(aggregate);
+
+        var samples = samples(aggregate);
+
+        assertEquals(0.0, (double) samples.get("test_pm25_window_count"));
+        assertFalse(samples.containsKey("test_pm25_window_max"));
+    }
+
+    @Test
+    void shouldAggregateConcurrently() throws Exception {
+        var aggregate = WindowedAggregate.build().name("test_pm25").window(Duration.ZERO).create();
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            IntStream.rangeClosed(1, 10_000).forEach(it -> executor.execute(() -> aggregate.record(it)));
+        }
+
+        var samples = samples(aggregate);
+        assertEquals(10_000.0, (double) samples.get("test_pm25_window_count"));
+        assertEquals(50_005_000.0, (double) samples.get("test_pm25_window_sum"));
+        assertEquals(1.0, (double) samples.get("test_pm25_window_min"));
+        assertEquals(10_000.0, (double) samples.get("test_pm25_window_max"));
+    }
+
+    @Test
+    void shouldExposeLastCompletedWindowToEveryScraper() {
+        var now = new AtomicLong();
+        var aggregate = WindowedAggregate.build().name("test_pm25").window(WINDOW).nanoTime(now::get).create();
+        aggregate.record(3);
+        aggregate.record(42);
+        assertEquals(0.0, (double) samples(aggregate).get("test_pm25_window_count"));
+
+        now.addAndGet(WINDOW.toNanos());
+
+        assertEquals(2.0, (double) samples(aggregate).get("test_pm25_window_count"));
+        assertEquals(2.0, (double) samples(aggregate).get("test_pm25_window_count"));
+        assertEquals(42.0, (double) samples(aggregate).get("test_pm25_window_max"));
+    }
+
+    @Test
+    void shouldExposeEmptyWindowAfterGap() {
+        var now = new AtomicLong();
+        var aggregate = WindowedAggregate.build().name("test_pm25").window(WINDOW).nanoTime(now::get).create();
+        aggregate.record(3);
+
+        now.addAndGet(WINDOW.multipliedBy(2).toNanos());
+
+        assertEquals(0.0, (double) samples(aggregate).get("test_pm25_window_count"));
+    }
+
+    private static Map<String, Double> samples(WindowedAggregate aggregate) {
+        return aggregate.collect().stream() //
+                .flatMap(it -> it.samples.stream()) //
+                .collect(toMap(it -> it.name, it -> it.value));
+    }
+}
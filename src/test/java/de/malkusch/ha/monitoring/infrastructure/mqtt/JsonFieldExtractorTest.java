@@ -0,0 +1,61 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonFieldExtractorTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void shouldExtractLikeJsonPointer() {
+        var paths = List.of("/SDS011/PM2.5", "/BME280/Temperature", "/list/1/value", "/missing", "/nil", "/text",
+                "/a~1b");
+        var json = """
+                {"Time": "2024-01-01T00:00:00", "SDS011": {"PM10": 4.1, "PM2.5": 2.3},
+                 "skipped": {"deep": [1, {"x": 2}]},
+                 "BME280": {"Temperature": 21.5},
+                 "list": [{"value": 1}, {"value": 2}],
+                 "nil": null, "text": "3.5", "a/b": 7}
+                """;
+
+        var values = new JsonFieldExtractor(MAPPER, paths).extract(json.getBytes(UTF_8));
+
+        var tree = MAPPER.readTree(json);
+        var expected = paths.stream().mapToDouble(it -> tree.at(it).asDouble()).toArray();
+        assertArrayEquals(expected, values);
+        assertArrayEquals(new double[] { 2.3, 21.5, 2, 0, 0, 3.5, 7 }, values);
+    }
+
+    @Test
+    void shouldConvertBooleansAndStructures() {
+        var extractor = new JsonFieldExtractor(MAPPER, List.of("/t", "/f", "/o", "/l"));
+
+        var values = extractor.extract("{\"t\": true, \"f\": false, \"o\": {\"x\": 1}, \"l\": [1]}".getBytes(UTF_8));
+
+        assertArrayEquals(new double[] { 1, 0, 0, 0 }, values);
+    }
+
+    @Test
+    void shouldReadNonNumericNumbers() {
+        var extractor = new JsonFieldExtractor(MAPPER, List.of("/a", "/b", "/c", "/d"));
+
+        var values = extractor.extract("{\"a\": nan, \"b\": -inf, \"c\": \"nan\", \"d\": 1}".getBytes(UTF_8));
+
+        assertArrayEquals(new double[] { Double.NaN, Double.NEGATIVE_INFINITY, 0, 1 }, values);
+    }
+
+    @Test
+    void shouldFailOnInvalidJson() {
+        var extractor = new JsonFieldExtractor(MAPPER, List.of("/a"));
+
+        assertThrows(JacksonException.class, () -> extractor.extract("{\"a\": foo}".getBytes(UTF_8)));
+    }
+}
@@ -0,0 +1,22 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MessageMapperTest {
+
+    private final MessageMapper.Factory factory = new MessageMapper.Factory(new ObjectMapper());
+
+    @Test
+    void shouldRepairNonNumericNumbersOutsideOfStrings() throws Exception {
+        var json = factory.jsonObject(JsonNode.class).map("{\"a\": nan, \"b\": inf, \"c\": -Infinity, \"d\": \"nan \\\" inf\"}");
+
+        assertEquals(Double.NaN, json.at("/a").asDouble());
+        assertEquals(Double.POSITIVE_INFINITY, json.at("/b").asDouble());
+        assertEquals(Double.NEGATIVE_INFINITY, json.at("/c").asDouble());
+        assertEquals("nan \" inf", json.at("/d").asString());
+    }
+}
@@ -0,0 +1,81 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Compares the ingestion of a sensor's MQTT payload through a
+ * {@link tools.jackson.databind.JsonNode} tree with the
+ * {@link JsonFieldExtractor}.
+ *
+ * Run with {@code mvn test-compile exec:java
+ * -Dexec.mainClass=de.malkusch.ha.monitoring.infrastructure.mqtt.MqttIngestionBenchmark
+ * -Dexec.classpathScope=test}. Allocations per message are reported by the
+ * GC profiler as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MqttIngestionBenchmark {
+
+    private static final List<String> PATHS = List.of("/SDS011/PM2.5", "/SDS011/PM10", "/BME280/Temperature",
+            "/BME280/Humidity", "/BME280/Pressure");
+
+    private static final byte[] PAYLOAD = """
+            {"Time":"2024-01-01T12:00:00","SDS011":{"PM2.5":2.3,"PM10":4.1},
+             "BME280":{"Temperature":21.5,"Humidity":45.2,"Pressure":1013.2},
+             "Wifi":{"AP":1,"SSId":"home","BSSId":"00:00:00:00:00:00","Channel":6,"RSSI":70}}
+            """.getBytes(UTF_8);
+
+    private ObjectMapper mapper;
+    private JsonFieldExtractor extractor;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper();
+        extractor = new JsonFieldExtractor(mapper, PATHS);
+    }
+
+    @Benchmark
+    public void tree(Blackhole blackhole) {
+        var json = mapper.readTree(new String(PAYLOAD));
+        for (var path : PATHS) {
+            blackhole.consume(json.at(path).asDouble());
+        }
+    }
+
+    @Benchmark
+    public double[] extractor() {
+        return extractor.extract(PAYLOAD);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder() //
+                .include(MqttIngestionBenchmark.class.getSimpleName()) //
+                .addProfiler(GCProfiler.class) //
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,58 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NonNumericFilterTest {
+
+    private static final String SLOPPY = "{\"a\": nan, \"b\": -inf, \"c\": \"nan \\\" inf\", \"d\": -1.5e3, \"e\": NaN}";
+
+    @Test
+    void shouldRewriteNonNumericNumbersOutsideOfStrings() {
+        var filter = new NonNumericFilter(SLOPPY.getBytes(UTF_8));
+
+        assertEquals("{\"a\": NaN, \"b\": -Infinity, \"c\": \"nan \\\" inf\", \"d\": -1.5e3, \"e\": NaN}",
+                readByByte(filter));
+        assertTrue(filter.isRepaired());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "{\"a\": NaN}", "{\"a\": Infinity, \"b\": -Infinity}", "{\"a\": \"nan\"}" })
+    void shouldNotCountValidTokensAsRepaired(String json) {
+        var filter = new NonNumericFilter(json.getBytes(UTF_8));
+
+        assertEquals(json, readByByte(filter));
+        assertFalse(filter.isRepaired());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 1, 3, 7, 1024 })
+    void bulkReadShouldMatchReadingByByte(int bufferSize) {
+        var filter = new NonNumericFilter(SLOPPY.getBytes(UTF_8));
+        var out = new ByteArrayOutputStream();
+        var buffer = new byte[bufferSize];
+        int n;
+        while ((n = filter.read(buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, n);
+        }
+
+        assertEquals(readByByte(new NonNumericFilter(SLOPPY.getBytes(UTF_8))), out.toString(UTF_8));
+    }
+
+    private static String readByByte(NonNumericFilter filter) {
+        var out = new ByteArrayOutputStream();
+        int b;
+        while ((b = filter.read()) != -1) {
+            out.write(b);
+        }
+        return out.toString(UTF_8);
+    }
+}
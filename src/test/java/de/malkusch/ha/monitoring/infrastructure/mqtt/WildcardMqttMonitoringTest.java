@@ -0,0 +1,33 @@
+package de.malkusch.ha.monitoring.infrastructure.mqtt;
+
+import de.malkusch.ha.monitoring.infrastructure.metrics.TrackedGauge;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class WildcardMqttMonitoringTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @Test
+    void shouldLabelByWildcards() {
+        var gauge = TrackedGauge.build().name("test_wildcard_temperature").labelNames("device", "path").create();
+        var monitoring = new WildcardMqttMonitoring("tele/+/#", List.of("device", "path"), List.of("/T"),
+                it -> gauge, MAPPER);
+
+        monitoring.update("tele/kitchen/a/SENSOR", "{\"T\": 21.5}".getBytes(UTF_8));
+
+        assertEquals(21.5, gauge.labels("kitchen", "a/SENSOR").get());
+    }
+
+    @Test
+    void shouldRequireOneLabelPerWildcard() {
+        assertThrows(IllegalArgumentException.class, () -> new WildcardMqttMonitoring("tele/+/+", List.of("device"),
+                List.of("/T"), it -> null, MAPPER));
+    }
+}
@@ -0,0 +1,20 @@
+package de.malkusch.ha.monitoring.infrastructure.niu;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class GeohashTest {
+
+    @ParameterizedTest
+    @CsvSource({ //
+            "57.64911, 10.40744, 11, u4pruydqqvj", //
+            "52.5200, 13.4050, 7, u33dc0c", //
+            "-33.8688, 151.2093, 5, r3gx2", //
+            "0, 0, 1, s" //
+    })
+    void shouldEncode(double lat, double lng, int precision, String expected) {
+        assertEquals(expected, Geohash.encode(lat, lng, precision));
+    }
+}
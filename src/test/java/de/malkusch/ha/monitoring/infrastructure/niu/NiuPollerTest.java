@@ -0,0 +1,296 @@
+package de.malkusch.ha.monitoring.infrastructure.niu;
+
+import de.malkusch.ha.monitoring.infrastructure.niu.NiuPoller.Position;
+import de.malkusch.ha.monitoring.infrastructure.niu.NiuPoller.Rates;
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry;
+import de.malkusch.niu.Niu.BatteryInfo;
+import de.malkusch.niu.Niu.Odometer;
+import de.malkusch.niu.Niu.Vehicle;
+import de.malkusch.niu.Niu.VehicleInfo;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class NiuPollerTest {
+
+    private static final Rates RATES = new Rates(Duration.ofSeconds(10), Duration.ofSeconds(60),
+            Duration.ofSeconds(240), Duration.ofHours(1), Duration.ofHours(1));
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+    private final PollerRegistry registry = new PollerRegistry();
+    private final FakeNiu niu = new FakeNiu();
+
+    @Test
+    void shouldPollParkedRateAfterRiding() throws Exception {
+        var vehicle = vehicle("active_idle");
+        niu.speed = 20;
+        try (var poller = poller()) {
+            assertEquals(10, interval(vehicle, "vehicle"));
+
+            niu.speed = 0;
+            scheduler.advance(RATES.active());
+            assertEquals(60, interval(vehicle, "vehicle"));
+        }
+    }
+
+    @Test
+    void shouldBackOffUpToMaxParkedRate() throws Exception {
+        var vehicle = vehicle("backoff");
+        try (var poller = poller()) {
+            assertEquals(60, interval(vehicle, "vehicle"));
+
+            scheduler.advance(Duration.ofSeconds(60));
+            assertEquals(120, interval(vehicle, "vehicle"));
+
+            scheduler.advance(Duration.ofSeconds(120));
+            assertEquals(240, interval(vehicle, "vehicle"));
+
+            scheduler.advance(Duration.ofSeconds(240));
+            assertEquals(240, interval(vehicle, "vehicle"));
+        }
+    }
+
+    @Test
+    void shouldWakeUpParkedVehicleWhenCharging() throws Exception {
+        var vehicle = vehicle("wake_up");
+        try (var poller = poller()) {
+            scheduler.advance(Duration.ofSeconds(60));
+            assertEquals(120, interval(vehicle, "vehicle"));
+            var queries = niu.vehicleQueries.get();
+
+            niu.charging = true;
+            scheduler.advance(Duration.ofSeconds(60));
+            assertEquals(10, interval(vehicle, "batteryInfo"));
+            assertEquals(10, interval(vehicle, "vehicle"));
+
+            scheduler.advance(RATES.active());
+            assertEquals(queries + 1, niu.vehicleQueries.get());
+        }
+    }
+
+    @Test
+    void shouldPollDiscoveredVehicle() throws Exception {
+        var vehicle = vehicle("discovered");
+        try (var poller = poller()) {
+            var added = new Vehicle("sn_added", "test_added");
+            niu.vehicles = new Vehicle[] { vehicle, added };
+
+            scheduler.advance(RATES.fleet());
+
+            assertNotNull(charge(added));
+            assertEquals(List.of("niu_test_added_batteryInfo", "niu_test_added_odometer", "niu_test_added_vehicle",
+                    "niu_test_discovered_batteryInfo", "niu_test_discovered_odometer",
+                    "niu_test_discovered_vehicle"), registrations());
+        }
+    }
+
+    @Test
+    void shouldRemoveSeriesOfVanishedVehicle() throws Exception {
+        var kept = vehicle("kept");
+        var removed = new Vehicle("sn_removed", "test_removed");
+        niu.vehicles = new Vehicle[] { kept, removed };
+        try (var poller = poller()) {
+            assertNotNull(charge(removed));
+            assertNotNull(lastUpdate("niu_test_removed_battery_charge"));
+
+            niu.vehicles = new Vehicle[] { kept };
+            scheduler.advance(RATES.fleet());
+
+            assertNull(charge(removed));
+            assertNull(lastUpdate("niu_test_removed_battery_charge"));
+            assertNull(CollectorRegistry.defaultRegistry.getSampleValue("niu_poll_interval_seconds",
+                    new String[] { "vehicle", "query" }, new String[] { removed.name(), "batteryInfo" }));
+            assertNotNull(charge(kept));
+            assertEquals(List.of("niu_test_kept_batteryInfo", "niu_test_kept_odometer", "niu_test_kept_vehicle"),
+                    registrations());
+        }
+    }
+
+    private static Double charge(Vehicle vehicle) {
+        return CollectorRegistry.defaultRegistry.getSampleValue("niu_" + vehicle.name() + "_battery_charge");
+    }
+
+    private static Double lastUpdate(String source) {
+        return CollectorRegistry.defaultRegistry.getSampleValue("last_update_timestamp_seconds",
+                new String[] { "source" }, new String[] { source });
+    }
+
+    private List<String> registrations() {
+        return registry.status().stream().map(PollerRegistry.Status::name).toList();
+    }
+
+    private Vehicle vehicle(String name) {
+        var vehicle = new Vehicle("sn_" + name, "test_" + name);
+        niu.vehicles = new Vehicle[] { vehicle };
+        return vehicle;
+    }
+
+    private NiuPoller poller() throws Exception {
+        var poller = new NiuPoller(niu, scheduler, registry, RATES, new Position(5, 2), Duration.ofMinutes(1));
+        scheduler.advance(Duration.ZERO);
+        return poller;
+    }
+
+    private static double interval(Vehicle vehicle, String query) {
+        return CollectorRegistry.defaultRegistry.getSampleValue("niu_poll_interval_seconds",
+                new String[] { "vehicle", "query" }, new String[] { vehicle.name(), query });
+    }
+
+    private static final class FakeNiu extends Niu {
+
+        private volatile Vehicle[] vehicles = {};
+        private volatile double speed;
+        private volatile boolean charging;
+        private final AtomicInteger vehicleQueries = new AtomicInteger();
+
+        FakeNiu() {
+            super(null, null, 60, null);
+        }
+
+        @Override
+        public Vehicle[] vehicles() {
+            return vehicles;
+        }
+
+        @Override
+        public Odometer odometer(String serialNumber) {
+            return new Odometer(100, 1000);
+        }
+
+        @Override
+        public BatteryInfo batteryInfo(String serialNumber) {
+            return new BatteryInfo(20, 100, 80, charging, 0);
+        }
+
+        @Override
+        public VehicleInfo vehicle(String serialNumber) {
+            vehicleQueries.incrementAndGet();
+            return new VehicleInfo(0, 5, 5, 100, speed, 0, 0, true, 50, 1, Instant.EPOCH, Instant.EPOCH,
+                    Instant.EPOCH, new de.malkusch.niu.Niu.Position(8.4, 49.0));
+        }
+    }
+
+    /**
+     * Runs scheduled tasks in the calling thread as virtual time advances.
+     */
+    private static final class ManualScheduler extends ScheduledThreadPoolExecutor {
+
+        private final List<Task> tasks = new ArrayList<>();
+        private long now;
+
+        ManualScheduler() {
+            super(1);
+        }
+
+        private final class Task implements ScheduledFuture<Object> {
+
+            private final Runnable command;
+            private final long period;
+            private long due;
+            private boolean cancelled;
+            private boolean done;
+
+            Task(Runnable command, long due, long period) {
+                this.command = command;
+                this.due = due;
+                this.period = period;
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit) {
+                return unit.convert(due - now, MILLISECONDS);
+            }
+
+            @Override
+            public int compareTo(Delayed other) {
+                return Long.compare(getDelay(MILLISECONDS), other.getDelay(MILLISECONDS));
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                if (isDone()) {
+                    return false;
+                }
+                cancelled = true;
+                tasks.remove(this);
+                return true;
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return cancelled;
+            }
+
+            @Override
+            public boolean isDone() {
+                return cancelled || done;
+            }
+
+            @Override
+            public Object get() {
+                return null;
+            }
+
+            @Override
+            public Object get(long timeout, TimeUnit unit) {
+                return null;
+            }
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            var task = new Task(command, now + unit.toMillis(delay), 0);
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay,
+                TimeUnit unit) {
+
+            var task = new Task(command, now + unit.toMillis(initialDelay), unit.toMillis(delay));
+            tasks.add(task);
+            return task;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            schedule(command, 0, MILLISECONDS);
+        }
+
+        void advance(Duration duration) {
+            var until = now + duration.toMillis();
+            while (true) {
+                var next = tasks.stream().filter(it -> it.due <= until)
+                        .reduce((a, b) -> b.due < a.due ? b : a);
+                if (next.isEmpty()) {
+                    break;
+                }
+                var task = next.get();
+                tasks.remove(task);
+                now = task.due;
+                task.done = task.period == 0;
+                task.command.run();
+                if (task.period > 0 && !task.cancelled) {
+                    task.due = now + task.period;
+                    tasks.add(task);
+                }
+            }
+            now = until;
+        }
+    }
+}
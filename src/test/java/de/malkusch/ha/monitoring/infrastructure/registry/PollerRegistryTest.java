@@ -0,0 +1,41 @@
+package de.malkusch.ha.monitoring.infrastructure.registry;
+
+import de.malkusch.ha.monitoring.infrastructure.registry.PollerRegistry.TriggerResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PollerRegistryTest {
+
+    private final PollerRegistry registry = new PollerRegistry();
+    private final AtomicInteger triggers = new AtomicInteger();
+
+    @Test
+    void shouldRejectDuplicateNames() {
+        registry.register("poller", "http", null, null);
+
+        assertThrows(IllegalStateException.class, () -> registry.register("poller", "http", null, null));
+    }
+
+    @Test
+    void shouldRefuseTriggerWhileUpdating() {
+        var registration = registry.register("poller", "http", triggers::incrementAndGet, null);
+
+        registration.measure(() -> assertEquals(TriggerResult.BUSY, registry.trigger("poller")));
+
+        assertEquals(0, triggers.get());
+    }
+
+    @Test
+    void shouldRefuseTriggerWithinMinimumInterval() {
+        registry.register("poller", "http", triggers::incrementAndGet, null);
+
+        assertEquals(TriggerResult.TRIGGERED, registry.trigger("poller"));
+        assertEquals(TriggerResult.BUSY, registry.trigger("poller"));
+
+        assertEquals(1, triggers.get());
+    }
+}
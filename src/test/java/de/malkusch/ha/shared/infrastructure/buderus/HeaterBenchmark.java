@@ -0,0 +1,75 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Duration;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Measures the cost of a heater query against the {@link KM200Simulator}:
+ * HTTP, AES decryption, JSON parsing and Heater's own wrapping.
+ *
+ * Run with {@code mvn test-compile exec:java
+ * -Dexec.mainClass=de.malkusch.ha.shared.infrastructure.buderus.HeaterBenchmark
+ * -Dexec.classpathScope=test}. Allocations per query are reported by the GC
+ * profiler as {@code gc.alloc.rate.norm}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HeaterBenchmark {
+
+    private static final String PATH = "/system/sensors/temperatures/outdoor_t1";
+
+    private KM200Simulator simulator;
+    private Heater heater;
+    private Heater cachedHeater;
+
+    @Setup
+    public void setUp() throws Exception {
+        simulator = new KM200Simulator(Duration.ZERO, 0).value(PATH, 12.5);
+        heater = simulator.heater(Integer.MAX_VALUE, Double.MAX_VALUE, Duration.ZERO);
+        cachedHeater = simulator.heater(Integer.MAX_VALUE, Double.MAX_VALUE, Duration.ofHours(1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        simulator.close();
+    }
+
+    @Benchmark
+    public double query() throws Exception {
+        return heater.query(PATH);
+    }
+
+    @Benchmark
+    public double cachedQuery() throws Exception {
+        return cachedHeater.query(PATH);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        var options = new OptionsBuilder() //
+                .include(HeaterBenchmark.class.getSimpleName()) //
+                .addProfiler(GCProfiler.class) //
+                .build();
+        new Runner(options).run();
+    }
+}
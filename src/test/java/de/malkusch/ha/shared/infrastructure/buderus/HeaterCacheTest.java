@@ -0,0 +1,96 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HeaterCacheTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void shouldServeFreshValueFromCache() throws Exception {
+        var cache = new HeaterCache(Duration.ofMinutes(1), Map.of());
+
+        cache.get("/a", loads::incrementAndGet);
+        var value = cache.get("/a", loads::incrementAndGet);
+
+        assertEquals(1, value);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldReloadExpiredValue() throws Exception {
+        var cache = new HeaterCache(Duration.ofMinutes(1), Map.of("/a", Duration.ZERO));
+
+        cache.get("/a", loads::incrementAndGet);
+        var value = cache.get("/a", loads::incrementAndGet);
+
+        assertEquals(2, value);
+    }
+
+    @Test
+    void shouldNotCacheFailures() throws Exception {
+        var cache = new HeaterCache(Duration.ofMinutes(1), Map.of());
+
+        assertThrows(IOException.class, () -> cache.get("/a", () -> {
+            throw new IOException();
+        }));
+        var value = cache.get("/a", loads::incrementAndGet);
+
+        assertEquals(1, value);
+    }
+
+    @Test
+    void shouldCoalesceConcurrentReaders() throws Exception {
+        var cache = new HeaterCache(Duration.ofMinutes(1), Map.of());
+        var loading = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> cache.get("/a", () -> {
+                loading.countDown();
+                release.await();
+                return loads.incrementAndGet();
+            }));
+            loading.await();
+            var second = executor.submit(() -> cache.get("/a", loads::incrementAndGet));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertEquals(1, (double) first.get(1, SECONDS));
+            assertEquals(1, (double) second.get(1, SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void shouldRetryWhenLoadingReaderIsInterrupted() throws Exception {
+        var cache = new HeaterCache(Duration.ofMinutes(1), Map.of());
+        var loading = new CountDownLatch(1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var first = executor.submit(() -> cache.get("/a", () -> {
+                loading.countDown();
+                new CountDownLatch(1).await();
+                return loads.incrementAndGet();
+            }));
+            loading.await();
+            var second = executor.submit(() -> cache.get("/a", loads::incrementAndGet));
+            Thread.sleep(50);
+            first.cancel(true);
+
+            assertEquals(1, (double) second.get(1, SECONDS));
+        }
+        assertEquals(1, loads.get());
+    }
+}
@@ -0,0 +1,89 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Puts the heater's query stack under load against a slow and flaky
+ * {@link KM200Simulator}.
+ *
+ * Enable with {@code -Dkm200.loadTest=true}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "km200.loadTest", matches = "true")
+public class HeaterLoadTest {
+
+    private static final Duration LATENCY = Duration.ofMillis(50);
+    private static final double ERROR_RATE = 0.05;
+    private static final int CONCURRENCY = 2;
+    private static final double REQUESTS_PER_SECOND = 20;
+    private static final Duration DURATION = Duration.ofSeconds(10);
+    private static final int PATHS = 25;
+
+    @Test
+    void shouldSustainPacedLoad() throws Exception {
+        try (var simulator = new KM200Simulator(LATENCY, ERROR_RATE)) {
+            var paths = new ArrayList<String>();
+            for (int i = 0; i < PATHS; i++) {
+                paths.add("/heatSources/path" + i);
+                simulator.value(paths.get(i), i);
+            }
+            var heater = simulator.heater(CONCURRENCY, REQUESTS_PER_SECOND, Duration.ZERO);
+
+            var latencies = new ConcurrentLinkedQueue<Long>();
+            var errors = new AtomicLong();
+            var end = System.nanoTime() + DURATION.toNanos();
+            try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (var path : paths) {
+                    executor.submit(() -> {
+                        while (System.nanoTime() < end) {
+                            var start = System.nanoTime();
+                            try {
+                                heater.query(path);
+                                var now = System.nanoTime();
+                                if (now <= end) {
+                                    latencies.add(now - start);
+                                }
+
+                            } catch (Exception e) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+            }
+
+            var sorted = new ArrayList<>(latencies);
+            Collections.sort(sorted);
+            var throughput = sorted.size() / (double) DURATION.toSeconds();
+            log.info("queries={} errors={} throughput={}/s p50={}ms p95={}ms p99={}ms max={}ms", sorted.size(),
+                    errors.get(), String.format("%.1f", throughput), percentile(sorted, 50), percentile(sorted, 95),
+                    percentile(sorted, 99), percentile(sorted, 100));
+
+            assertTrue(throughput <= REQUESTS_PER_SECOND * 1.05, "Pacing exceeded: " + throughput);
+            assertTrue(simulator.requests() <= REQUESTS_PER_SECOND * (DURATION.toSeconds() + 1),
+                    "Gateway received " + simulator.requests() + " requests");
+        }
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        var index = Math.min(sorted.size() - 1, (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1);
+        return NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+    }
+}
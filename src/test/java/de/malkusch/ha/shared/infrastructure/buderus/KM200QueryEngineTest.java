@@ -0,0 +1,38 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KM200QueryEngineTest {
+
+    @Test
+    void shouldInterruptQueryWaitingForPacing() throws Exception {
+        var engine = new KM200QueryEngine(null, 1, 0.1);
+        assertEquals(1, (int) engine.query(km200 -> 1));
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var waiting = executor.submit(() -> engine.query(km200 -> 2));
+            Thread.sleep(100);
+            var start = System.nanoTime();
+            waiting.cancel(true);
+            executor.shutdown();
+
+            assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+
+    @Test
+    void shouldThrowWhenInterruptedBeforePacing() {
+        var engine = new KM200QueryEngine(null, 1, 0.1);
+        Thread.currentThread().interrupt();
+
+        assertThrows(InterruptedException.class, () -> engine.query(km200 -> 1));
+    }
+}
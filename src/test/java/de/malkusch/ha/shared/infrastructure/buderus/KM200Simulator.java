@@ -0,0 +1,168 @@
+package de.malkusch.ha.shared.infrastructure.buderus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.malkusch.ha.shared.infrastructure.circuitbreaker.CircuitBreaker;
+import de.malkusch.km200.KM200;
+import de.malkusch.km200.KM200Exception;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * A local stand-in for the KM200 gateway.
+ *
+ * It serves the configured values AES encrypted like the gateway does, i.e.
+ * ECB with a key of {@code md5(gatewayPassword + salt) + md5(salt +
+ * privatePassword)}, zero padded and Base64 encoded. Each response is delayed
+ * by {@code latency}, and a share of {@code errorRate} requests fails with 500.
+ * Intermediate paths are served as refEnum of their children.
+ */
+public final class KM200Simulator implements AutoCloseable {
+
+    public static final String GATEWAY_PASSWORD = "1234-1234-1234-1234";
+    public static final String PRIVATE_PASSWORD = "secret";
+    public static final String SALT = "867845e97c4e29dce522b9a7d3a3e07b152bffadddbed7f5ffd842e9895ad1e4";
+
+    private final HttpServer server;
+    private final byte[] key;
+    private final Duration latency;
+    private final double errorRate;
+    private final Map<String, Double> values = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+
+    public KM200Simulator(Duration latency, double errorRate) throws IOException {
+        this.latency = latency;
+        this.errorRate = errorRate;
+        this.key = key(GATEWAY_PASSWORD, PRIVATE_PASSWORD, SALT);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String host() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public KM200Simulator value(String path, double value) {
+        values.put(path, value);
+        return this;
+    }
+
+    /**
+     * A heater which queries this simulator through the production stack.
+     */
+    public Heater heater(int concurrency, double requestsPerSecond, Duration ttl)
+            throws KM200Exception, IOException, InterruptedException {
+
+        var km200 = new KM200(host(), Duration.ofSeconds(10), GATEWAY_PASSWORD, PRIVATE_PASSWORD, SALT);
+        var engine = new KM200QueryEngine(km200, concurrency, requestsPerSecond);
+        var breaker = new CircuitBreaker<Object>("simulator", 1000, 1, Duration.ofSeconds(1), KM200Exception.class,
+                IOException.class);
+        return new Heater(engine, breaker, new HeaterCache(ttl, Map.of()));
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            Thread.sleep(latency);
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            var path = exchange.getRequestURI().getPath();
+            var json = json(path);
+            if (json == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            var body = encrypt(json);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private String json(String path) {
+        var value = values.get(path);
+        if (value != null) {
+            return String.format(
+                    "{\"id\":\"%s\",\"type\":\"floatValue\",\"writeable\":0,\"recordable\":0,\"value\":%s,\"unitOfMeasure\":\"C\"}",
+                    path, value);
+        }
+
+        var prefix = path.endsWith("/") ? path : path + "/";
+        var references = values.keySet().stream() //
+                .filter(it -> it.startsWith(prefix)) //
+                .map(it -> prefix + it.substring(prefix.length()).split("/")[0]) //
+                .distinct() //
+                .map(it -> String.format("{\"id\":\"%s\",\"uri\":\"%s%s\"}", it, host(), it)) //
+                .collect(joining(","));
+        if (references.isEmpty()) {
+            return null;
+        }
+        return String.format("{\"id\":\"%s\",\"type\":\"refEnum\",\"references\":[%s]}", path, references);
+    }
+
+    private byte[] encrypt(String json) throws GeneralSecurityException {
+        var plain = json.getBytes(StandardCharsets.UTF_8);
+        var padded = Arrays.copyOf(plain, (plain.length + 15) / 16 * 16);
+        var cipher = Cipher.getInstance("AES/ECB/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"));
+        return Base64.getEncoder().encode(cipher.doFinal(padded));
+    }
+
+    private static byte[] key(String gatewayPassword, String privatePassword, String salt) {
+        try {
+            var saltBytes = HexFormat.of().parseHex(salt);
+            var gateway = gatewayPassword.replace("-", "").getBytes(StandardCharsets.UTF_8);
+            var first = MessageDigest.getInstance("MD5").digest(concat(gateway, saltBytes));
+            var second = MessageDigest.getInstance("MD5")
+                    .digest(concat(saltBytes, privatePassword.getBytes(StandardCharsets.UTF_8)));
+            return concat(first, second);
+
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        var result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,137 @@
+package de.malkusch.ha.shared.infrastructure.mqtt;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MqttDispatcherTest {
+
+    private final MqttDispatcher dispatcher = new MqttDispatcher(Duration.ZERO, 1000);
+
+    @AfterEach
+    void close() throws Exception {
+        dispatcher.close();
+    }
+
+    @Test
+    void shouldKeepOrderPerTopic() throws Exception {
+        var consumed = new CopyOnWriteArrayList<String>();
+        var done = new CountDownLatch(1000);
+        Mqtt.Consumer consumer = it -> {
+            consumed.add(it);
+            done.countDown();
+        };
+
+        IntStream.range(0, 1000).forEach(it -> dispatcher.dispatch("a", "a", consumer, bytes(it)));
+
+        assertTrue(done.await(5, SECONDS));
+        assertEquals(IntStream.range(0, 1000).mapToObj(String::valueOf).toList(), List.copyOf(consumed));
+    }
+
+    @Test
+    void slowTopicShouldNotBlockOtherTopics() throws Exception {
+        var release = new CountDownLatch(1);
+        var consumedB = new CountDownLatch(1);
+        dispatcher.dispatch("a", "a", (topic, message) -> release.await(), bytes(1));
+
+        dispatcher.dispatch("b", "b", (topic, message) -> consumedB.countDown(), bytes(2));
+
+        assertTrue(consumedB.await(5, SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void shouldRemoveIdleLanes() throws Exception {
+        var done = new CountDownLatch(100);
+        Mqtt.TopicConsumer consumer = (topic, message) -> done.countDown();
+        IntStream.range(0, 100).forEach(it -> dispatcher.dispatch("+", "topic/" + it, consumer, bytes(it)));
+        assertTrue(done.await(5, SECONDS));
+
+        for (int i = 0; i < 50 && dispatcher.lanes() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, dispatcher.lanes());
+    }
+
+    @Test
+    void shouldDropOldestMessagesOfFullLane() throws Exception {
+        try (var bounded = new MqttDispatcher(Duration.ZERO, 2)) {
+            var consumed = new CopyOnWriteArrayList<String>();
+            var started = new CountDownLatch(1);
+            var release = new CountDownLatch(1);
+            var done = new CountDownLatch(3);
+            Mqtt.Consumer consumer = it -> {
+                started.countDown();
+                release.await();
+                consumed.add(it);
+                done.countDown();
+            };
+            bounded.dispatch("a", "a", consumer, bytes(0));
+            assertTrue(started.await(5, SECONDS));
+
+            IntStream.range(1, 5).forEach(it -> bounded.dispatch("a", "a", consumer, bytes(it)));
+            release.countDown();
+
+            assertTrue(done.await(5, SECONDS));
+            assertEquals(List.of("0", "3", "4"), List.copyOf(consumed));
+        }
+    }
+
+    @Test
+    void shouldCoalesceWithinMinInterval() throws Exception {
+        try (var coalescing = new MqttDispatcher(Duration.ofMillis(200), 1000)) {
+            var consumed = new CopyOnWriteArrayList<String>();
+            var newest = new CountDownLatch(1);
+            Mqtt.Consumer consumer = it -> {
+                consumed.add(it);
+                if (it.equals("99")) {
+                    newest.countDown();
+                }
+            };
+
+            IntStream.range(0, 100).forEach(it -> coalescing.dispatch("a", "a", consumer, bytes(it)));
+
+            assertTrue(newest.await(5, SECONDS));
+            assertTrue(consumed.size() <= 2, consumed.toString());
+        }
+    }
+
+    @Test
+    void shouldNotCoalesceConsumerWhichNeedsEveryMessage() throws Exception {
+        try (var coalescing = new MqttDispatcher(Duration.ofMillis(200), 1000)) {
+            var consumed = new CopyOnWriteArrayList<String>();
+            var done = new CountDownLatch(100);
+            var consumer = new Mqtt.Consumer() {
+
+                @Override
+                public void consume(String message) {
+                    consumed.add(message);
+                    done.countDown();
+                }
+
+                @Override
+                public boolean isCoalescable() {
+                    return false;
+                }
+            };
+
+            IntStream.range(0, 100).forEach(it -> coalescing.dispatch("a", "a", consumer, bytes(it)));
+
+            assertTrue(done.await(5, SECONDS));
+            assertEquals(IntStream.range(0, 100).mapToObj(String::valueOf).toList(), List.copyOf(consumed));
+        }
+    }
+
+    private static byte[] bytes(int value) {
+        return String.valueOf(value).getBytes();
+    }
+}
@@ -0,0 +1,70 @@
+package de.malkusch.ha.shared.infrastructure.mqtt;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TopicRouterTest {
+
+    private static final Mqtt.Consumer CONSUMER = it -> {
+    };
+
+    @ParameterizedTest
+    @CsvSource({ //
+            "tele/+/SENSOR, tele/kitchen/SENSOR, true", //
+            "tele/+/SENSOR, tele/kitchen/STATE, false", //
+            "tele/+/SENSOR, tele/a/b/SENSOR, false", //
+            "tele/#, tele/kitchen/SENSOR, true", //
+            "tele/#, tele, true", //
+            "#, $SYS/uptime, false", //
+            "+/uptime, $SYS/uptime, false", //
+            "$SYS/#, $SYS/uptime, true", //
+            "tele/kitchen/SENSOR, tele/kitchen/SENSOR, true", //
+            "tele/kitchen, tele/kitchen/SENSOR, false" //
+    })
+    void shouldMatch(String filter, String topic, boolean matches) {
+        var router = new TopicRouter();
+        router.put(filter, CONSUMER);
+
+        assertEquals(matches, !router.route(topic).isEmpty());
+    }
+
+    @Test
+    void shouldRouteToAllMatchingFilters() {
+        var router = new TopicRouter();
+        var filters = List.of("tele/+/SENSOR", "tele/#", "+/kitchen/+", "tele/kitchen/SENSOR", "stat/#");
+        filters.forEach(it -> router.put(it, CONSUMER));
+
+        var routed = router.route("tele/kitchen/SENSOR").stream().map(TopicRouter.Route::filter).sorted().toList();
+
+        assertEquals(Arrays.asList("+/kitchen/+", "tele/#", "tele/+/SENSOR", "tele/kitchen/SENSOR"), routed);
+    }
+
+    @Test
+    void shouldRemoveRouteOnlyWithItsConsumer() {
+        var router = new TopicRouter();
+        router.put("tele/+/SENSOR", CONSUMER);
+
+        router.remove("tele/+/SENSOR", (topic, message) -> {
+        });
+        assertEquals(1, router.route("tele/kitchen/SENSOR").size());
+
+        router.remove("tele/+/SENSOR", CONSUMER);
+        assertTrue(router.route("tele/kitchen/SENSOR").isEmpty());
+    }
+
+    @Test
+    void shouldRejectInvalidFilter() {
+        var router = new TopicRouter();
+
+        assertThrows(IllegalArgumentException.class, () -> router.put("tele/#/SENSOR", CONSUMER));
+        assertThrows(IllegalArgumentException.class, () -> router.put("tele/a+/SENSOR", CONSUMER));
+    }
+}
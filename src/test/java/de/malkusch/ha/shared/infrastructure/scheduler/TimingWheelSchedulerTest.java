@@ -0,0 +1,92 @@
+package de.malkusch.ha.shared.infrastructure.scheduler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.parallel.ExecutionMode.CONCURRENT;
+
+@Execution(CONCURRENT)
+public class TimingWheelSchedulerTest {
+
+    private static final Duration TICK = Duration.ofMillis(10);
+
+    private final TimingWheelScheduler scheduler = new TimingWheelScheduler("test", TICK, 8);
+
+    @AfterEach
+    void close() {
+        scheduler.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 5, 35, 79, 80, 81, 250 })
+    void shouldNotFireEarly(int delay) throws Exception {
+        var start = System.nanoTime();
+
+        var fired = scheduler.schedule(() -> System.nanoTime() - start, delay, MILLISECONDS).get(1, SECONDS);
+
+        assertTrue(fired >= MILLISECONDS.toNanos(delay), "Fired after " + fired + "ns");
+    }
+
+    @Test
+    void shouldRunOnVirtualThread() throws Exception {
+        var virtual = scheduler.schedule(() -> Thread.currentThread().isVirtual(), 0, MILLISECONDS);
+
+        assertTrue(virtual.get(1, SECONDS));
+    }
+
+    @Test
+    void shouldRepeatAtFixedRate() throws Exception {
+        var runs = new CountDownLatch(3);
+
+        var future = scheduler.scheduleAtFixedRate(runs::countDown, 0, 20, MILLISECONDS);
+
+        assertTrue(runs.await(1, SECONDS));
+        future.cancel(false);
+    }
+
+    @Test
+    void shouldNotRunCancelledTask() throws Exception {
+        var runs = new AtomicInteger();
+
+        scheduler.schedule(runs::incrementAndGet, 30, MILLISECONDS).cancel(false);
+
+        Thread.sleep(100);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void shouldRejectAfterShutdown() throws Exception {
+        scheduler.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> scheduler.schedule(() -> {
+        }, 0, MILLISECONDS));
+        assertTrue(scheduler.awaitTermination(1, SECONDS));
+    }
+
+    @Test
+    void shouldCancelPendingTasksOnShutdown() throws Exception {
+        var future = scheduler.schedule(() -> {
+        }, 10, SECONDS);
+
+        scheduler.shutdown();
+
+        assertTrue(scheduler.awaitTermination(1, SECONDS));
+        assertTrue(future.isCancelled());
+    }
+
+    @Test
+    void shouldRejectInvalidWheelSize() {
+        assertThrows(IllegalArgumentException.class, () -> new TimingWheelScheduler("invalid", TICK, 3));
+    }
+}